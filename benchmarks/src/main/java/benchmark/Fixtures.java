@@ -0,0 +1,160 @@
+package benchmark;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import action.*;
+import framework.Config;
+import framework.LoopbackNetwork;
+import framework.NetController;
+import playlist.PlaylistAction;
+
+/**
+ * Shared setup for the benchmarks: sample actions, net controllers, and
+ * handles onto the protocol classes.
+ * 
+ * Process3PC and ProcessMonitor live in the default package (next to
+ * Launcher), which a packaged class cannot import, so the benchmarks reach
+ * them through method handles instead.
+ */
+public final class Fixtures
+{
+	/**
+	 * Every Action type that actually crosses the network.
+	 */
+	public static final String[] WIRE_ACTIONS = {
+		"Start3PC", "Yes", "Abort", "Precommit", "Ack", "Commit",
+		"StateRequest", "Committable", "Uncertain", "DecisionRequest",
+		"YouAreElected", "KeepAlive"
+	};
+	
+	private Fixtures()
+	{
+	}
+	
+	/**
+	 * @return an Add of a song unique to the given index.
+	 */
+	public static PlaylistAction add(int i)
+	{
+		ArrayList<String> cmd = new ArrayList<String>();
+		cmd.add("Add");
+		cmd.add("Song_" + i);
+		cmd.add("youtube.com/S" + i);
+		return new PlaylistAction(cmd);
+	}
+	
+	/**
+	 * @return the participants of a transaction coordinated by process 0.
+	 */
+	public static Collection<Integer> participants(int numProcesses)
+	{
+		List<Integer> participants = new ArrayList<Integer>();
+		for (int i = 1; i < numProcesses; i++)
+		{
+			participants.add(i);
+		}
+		return participants;
+	}
+	
+	/**
+	 * Builds a representative instance of the named Action type.
+	 * @param type	simple class name, one of WIRE_ACTIONS
+	 * @param i		transaction ID
+	 */
+	public static Action action(String type, int i)
+	{
+		PlaylistAction pa = add(i);
+		switch (type)
+		{
+			case "Start3PC":		return new Start3PC(i, 0, 1, "", participants(5), pa);
+			case "Yes":				return new Yes(i, 1, 0, "", participants(5), pa);
+			case "Abort":			return new Abort(i, 1, 0, pa);
+			case "Precommit":		return new Precommit(i, 0, 1, "", pa);
+			case "Ack":				return new Ack(i, 1, 0, pa);
+			case "Commit":			return new Commit(i, 0, 1, pa);
+			case "StateRequest":	return new StateRequest(i, 2, 1, pa);
+			case "Committable":		return new Committable(i, 1, 2, pa);
+			case "Uncertain":		return new Uncertain(i, 1, 2, pa);
+			case "DecisionRequest":	return new DecisionRequest(i, 1, 2, pa);
+			case "YouAreElected":	return new YouAreElected(i, 1, 2, pa);
+			case "KeepAlive":		return new KeepAlive(0, 1, 2, null);
+			default:
+				throw new IllegalArgumentException("Unknown action type " + type + ", expected one of " + Arrays.toString(WIRE_ACTIONS));
+		}
+	}
+	
+	/**
+	 * Creates a TCP NetController for process procNum of a localhost cluster
+	 * listening on basePort + i.
+	 */
+	public static NetController netController(int procNum, int numProcesses, int basePort) throws Exception
+	{
+		return netController(procNum, numProcesses, basePort, false);
+	}
+	
+	/**
+	 * Creates a socket NetController as above; with unix set, over Unix domain
+	 * sockets in the temp directory named after the same ports.
+	 */
+	public static NetController netController(int procNum, int numProcesses, int basePort, boolean unix) throws Exception
+	{
+		Config config = config(procNum, numProcesses, basePort);
+		if (unix)
+		{
+			config.socketPaths = new String[numProcesses];
+			for (int i = 0; i < numProcesses; i++)
+			{
+				config.socketPaths[i] = new File(System.getProperty("java.io.tmpdir"), "3pc-bench-" + (basePort + i) + ".sock").getPath();
+			}
+		}
+		return new NetController(config);
+	}
+	
+	/**
+	 * Creates a NetController for process procNum attached to an in-JVM network.
+	 */
+	public static NetController netController(int procNum, LoopbackNetwork network)
+	{
+		return new NetController(config(procNum, network.getNumProcesses(), 0), network.connect(procNum));
+	}
+	
+	private static Config config(int procNum, int numProcesses, int basePort)
+	{
+		Config config = new Config();
+		config.numProcesses = numProcesses;
+		config.procNum = procNum;
+		config.addresses = new InetAddress[numProcesses];
+		config.ports = new int[numProcesses];
+		for (int i = 0; i < numProcesses; i++)
+		{
+			config.addresses[i] = InetAddress.getLoopbackAddress();
+			config.ports[i] = basePort + i;
+		}
+		config.logger = Logger.getLogger("NetFramework");
+		return config;
+	}
+	
+	/**
+	 * Finds a public method or constructor of a default-package class.
+	 */
+	static MethodHandle constructor(String className, Class<?>... parameterTypes) throws Exception
+	{
+		Class<?> c = Class.forName(className);
+		return MethodHandles.publicLookup().findConstructor(c, MethodType.methodType(void.class, parameterTypes));
+	}
+	
+	static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameterTypes) throws Exception
+	{
+		Class<?> c = Class.forName(className);
+		return MethodHandles.publicLookup().findVirtual(c, name, MethodType.methodType(returnType, parameterTypes));
+	}
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import action.KeepAlive;
+import framework.NetController;
+
+/**
+ * Cost of one ProcessMonitor.monitor call, which Process3PC makes on every
+ * pass of its main loop, with a Keep-Alive from every other process. The
+ * send interval is set high enough that no Keep-Alives are sent, so this
+ * measures the bookkeeping alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessMonitorBenchmark
+{
+	@Param({"3", "10", "50"})
+	public int numProcesses;
+	
+	private NetController network;
+	private Object monitor;
+	private MethodHandle monitorMethod;
+	private List<KeepAlive> received;
+	private List<KeepAlive> keepAlives;
+	
+	@Setup
+	public void setup() throws Throwable
+	{
+		this.network = Fixtures.netController(0, this.numProcesses, 7100);
+		this.monitor = Fixtures.constructor("ProcessMonitor", Integer.class, Integer.class, NetController.class, long.class, long.class)
+				.invoke(Integer.valueOf(0), Integer.valueOf(this.numProcesses), this.network, 60000L, Long.MAX_VALUE / 2);
+		this.monitorMethod = Fixtures.method("ProcessMonitor", "monitor", Collection.class, Collection.class);
+		
+		this.keepAlives = new ArrayList<KeepAlive>();
+		for (int i = 1; i < this.numProcesses; i++)
+		{
+			this.keepAlives.add(new KeepAlive(0, i, 0, null));
+		}
+		this.received = new ArrayList<KeepAlive>(this.numProcesses);
+	}
+	
+	@Benchmark
+	public Object monitor() throws Throwable
+	{
+		// monitor() consumes the list it is given.
+		this.received.addAll(this.keepAlives);
+		return this.monitorMethod.invoke(this.monitor, (Collection<KeepAlive>)this.received);
+	}
+	
+	@TearDown
+	public void teardown()
+	{
+		this.network.shutdown();
+	}
+}
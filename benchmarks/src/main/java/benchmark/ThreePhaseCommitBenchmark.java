@@ -0,0 +1,128 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import framework.LoopbackNetwork;
+import framework.NetController;
+import logging.Level;
+import logging.Log;
+import playlist.PlaylistAction;
+
+/**
+ * Latency of one complete failure-free 3PC round (VOTE-REQ, YES, PRECOMMIT,
+ * ACK, COMMIT) on an in-process cluster, the same way Launcher runs it: one
+ * thread per Process3PC, talking over localhost sockets ("tcp") or in-JVM
+ * queues ("loopback"). A round ends when every process has decided COMMIT.
+ * logLevel "debug" prints every send and receive, as Launcher does by
+ * default; "off" shows what the protocol costs without console output.
+ * storage picks the engine the processes log to (see log.Storage);
+ * "memory" leaves out storage costs altogether.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreePhaseCommitBenchmark
+{
+	@Param({"3", "5"})
+	public int numProcesses;
+	
+	@Param({"tcp", "unix", "loopback"})
+	public String transport;
+	
+	@Param({"debug", "off"})
+	public String logLevel;
+	
+	@Param({"file", "wal", "mmap", "memory"})
+	public String storage;
+	
+	private List<NetController> networks;
+	private List<Object> processes;
+	private MethodHandle start;
+	private MethodHandle hasCommitted;
+	private MethodHandle crash;
+	private int nextTransID;
+	
+	@Setup
+	public void setup() throws Throwable
+	{
+		MethodHandle create = Fixtures.constructor("Process3PC", Integer.class, NetController.class, Integer.class, boolean.class);
+		this.start 			= Fixtures.method("Process3PC", "tryStart", boolean.class, Integer.class, PlaylistAction.class);
+		this.hasCommitted 	= Fixtures.method("Process3PC", "hasCommitted", boolean.class, Integer.class);
+		this.crash 			= Fixtures.method("Process3PC", "crash", void.class);
+		this.networks 		= new ArrayList<NetController>();
+		this.processes 		= new ArrayList<Object>();
+		this.nextTransID 	= 0;
+		Log.setLevel(Level.parse(this.logLevel));
+		
+		LoopbackNetwork loopback = new LoopbackNetwork(this.numProcesses, false);
+		for (int i = 0; i < this.numProcesses; i++)
+		{
+			NetController nc = this.transport.equals("loopback")
+					? Fixtures.netController(i, loopback)
+					: Fixtures.netController(i, this.numProcesses, 7200, this.transport.equals("unix"));
+			nc.getConfig().storage = this.storage;
+			Object p = create.invoke(Integer.valueOf(i), nc, Integer.valueOf(this.numProcesses), true);
+			Thread t = new Thread((Runnable)p, "Process3PC-" + i);
+			t.setDaemon(true);
+			t.start();
+			this.networks.add(nc);
+			this.processes.add(p);
+		}
+		
+		// Let every monitor see every other process before the first round.
+		Thread.sleep(2000);
+	}
+	
+	@Benchmark
+	public int round() throws Throwable
+	{
+		Integer transID = this.nextTransID++;
+		PlaylistAction add = Fixtures.add(transID);
+		while (!(boolean)this.start.invoke(this.processes.get(0), transID, add))
+		{
+			Thread.onSpinWait();
+		}
+		
+		for (Object p : this.processes)
+		{
+			while (!(boolean)this.hasCommitted.invoke(p, transID))
+			{
+				Thread.onSpinWait();
+			}
+		}
+		return transID;
+	}
+	
+	@TearDown
+	public void teardown() throws Throwable
+	{
+		// Stop the processes' apply threads.
+		for (Object p : this.processes)
+		{
+			this.crash.invoke(p);
+		}
+		for (NetController nc : this.networks)
+		{
+			nc.shutdown();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package framework;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import action.Action;
+import benchmark.Fixtures;
+
+/**
+ * Cost of the wire encoding used by the TCP transport (Java serialization
+ * plus Base64) for every Action type sent between processes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetControllerBenchmark
+{
+	@Param({"Start3PC", "Yes", "Abort", "Precommit", "Ack", "Commit",
+			"StateRequest", "Committable", "Uncertain", "DecisionRequest",
+			"YouAreElected", "KeepAlive"})
+	public String actionType;
+	
+	private Action action;
+	private String encoded;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		this.action  = Fixtures.action(this.actionType, 42);
+		this.encoded = SocketTransport.toString((Serializable)this.action);
+	}
+	
+	@Benchmark
+	public String serialize() throws Exception
+	{
+		return SocketTransport.toString((Serializable)this.action);
+	}
+	
+	@Benchmark
+	public Object deserialize() throws Exception
+	{
+		return SocketTransport.fromString(this.encoded);
+	}
+}
@@ -0,0 +1,80 @@
+package log;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.Fixtures;
+
+/**
+ * Throughput of PlaylistLog.log (apply one committed Add and persist the
+ * Playlist) as a function of the number of songs already in the Playlist.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistLogBenchmark
+{
+	@Param({"10", "100", "1000", "10000"})
+	public int playlistSize;
+	
+	private File template;
+	private File working;
+	private PlaylistLog log;
+	private ArrayList<String> command;
+	
+	@Setup(Level.Trial)
+	public void writeTemplate() throws Exception
+	{
+		this.template = File.createTempFile("playlist-template", ".log");
+		this.working  = File.createTempFile("playlist", ".log");
+		
+		PlaylistLog seed = new PlaylistLog(true, this.template.getPath());
+		for (int i = 0; i < this.playlistSize; i++)
+		{
+			seed.read().add("Song_" + i, "youtube.com/S" + i, i);
+		}
+		// Persist the whole seed Playlist with one final logged Add.
+		seed.log(Fixtures.add(this.playlistSize).getCommand(), this.playlistSize);
+		this.command = Fixtures.add(this.playlistSize + 1).getCommand();
+	}
+	
+	@Setup(Level.Invocation)
+	public void reload() throws Exception
+	{
+		Files.copy(this.template.toPath(), this.working.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		this.log = new PlaylistLog(false, this.working.getPath());
+	}
+	
+	@Benchmark
+	public boolean log() throws Exception
+	{
+		return this.log.log(this.command, this.playlistSize + 1);
+	}
+	
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		Files.deleteIfExists(this.template.toPath());
+		Files.deleteIfExists(this.working.toPath());
+	}
+}
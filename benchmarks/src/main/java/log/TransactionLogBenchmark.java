@@ -0,0 +1,81 @@
+package log;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import action.Action;
+import action.Yes;
+import benchmark.Fixtures;
+
+/**
+ * Throughput of TransactionLog.log as a function of the number of records
+ * already in the DT log. Every invocation starts from a fresh copy of a
+ * log holding exactly historyLength records, so the history does not grow
+ * while it is being measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionLogBenchmark
+{
+	@Param({"10", "100", "1000", "5000"})
+	public int historyLength;
+	
+	private File template;
+	private File working;
+	private TransactionLog log;
+	private Action record;
+	
+	@Setup(Level.Trial)
+	public void writeTemplate() throws Exception
+	{
+		this.template = File.createTempFile("dtlog-template", ".log");
+		this.working  = File.createTempFile("dtlog", ".log");
+		
+		TransactionLog seed = new TransactionLog(true, this.template.getPath());
+		for (int i = 0; i < this.historyLength; i++)
+		{
+			seed.log(new Yes(i, 1, 0, "", Fixtures.participants(5), Fixtures.add(i)));
+		}
+		this.record = new Yes(this.historyLength, 1, 0, "", Fixtures.participants(5), Fixtures.add(this.historyLength));
+	}
+	
+	@Setup(Level.Invocation)
+	public void reload() throws Exception
+	{
+		Files.copy(this.template.toPath(), this.working.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		this.log = new TransactionLog(false, this.working.getPath());
+	}
+	
+	@Benchmark
+	public boolean log()
+	{
+		return this.log.log(this.record);
+	}
+	
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		Files.deleteIfExists(this.template.toPath());
+		Files.deleteIfExists(this.working.toPath());
+	}
+}
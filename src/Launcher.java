@@ -2,15 +2,29 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import playlist.PlaylistAction;
 import framework.Config;
+import framework.LoopbackNetwork;
 import framework.NetController;
+import log.Storage;
+import logging.Level;
+import logging.Log;
+import metrics.MetricsRegistry;
+import tracing.CriticalPath;
+import tracing.Tracer;
 
 public class Launcher {
 
@@ -29,6 +43,21 @@ public class Launcher {
 	
 	// The transaction ID to use for the next transaction.
 	private static Integer nextTransID = 0;
+	
+	// Transport used by processes created from now on: "tcp" (sockets on
+	// ports 6100+i) or "loopback" (in-JVM queues, no sockets).
+	private static String transport = "tcp";
+	
+	// Whether the loopback transport delivers deep copies of each message.
+	private static boolean loopbackCopy = false;
+	
+	// Shared in-JVM network when the loopback transport is in use.
+	private static LoopbackNetwork loopbackNetwork = null;
+	
+	// Storage engine (see log.Storage) for processes created from now on,
+	// and overrides for particular processes.
+	private static String storage = "file";
+	private static HashMap<Integer, String> processStorage = new HashMap<Integer, String>();
 
 	// Configure commands.
 	private static final String ADD_CMD = "add";
@@ -51,6 +80,22 @@ public class Launcher {
 	private static final String TPC = "3pc";
 	private static final String PRINT_PLAYLISTS_CMD = "p";
 	private static final String PRINT_DT_LOGS_CMD = "pl";
+	private static final String TRANSPORT_CMD = "transport";
+	private static final String METRICS_CMD = "metrics";
+	private static final String READ_CMD = "read";
+	private static final String CONSISTENT_READ_CMD = "readc";
+	private static final String LIST_CMD = "list";
+	private static final String BY_URL_CMD = "byurl";
+	private static final String CATCH_UP_CMD = "catchup";
+	
+	// Songs per page printed by the list command.
+	private static final int LIST_PAGE_SIZE = 20;
+	private static final String LOG_CMD = "log";
+	private static final String TRACING_CMD = "tracing";
+	private static final String ELECTION_CMD = "election";
+	private static final String PRESUMED_ABORT_CMD = "presumedabort";
+	private static final String STORAGE_CMD = "storage";
+	private static final String CRITICAL_PATH_CMD = "path";
 
 	// Number of processes we choose to create for this execution.
 	public static int numProcesses;
@@ -97,12 +142,7 @@ public class Launcher {
 			cmd.add("Add");
 			cmd.add(parameters[0]);
 			cmd.add(parameters[1]);
-			PlaylistAction pa = new PlaylistAction(cmd);
-			
-			processes.get(0).start(nextTransID, pa);
-			
-			// Don't reuse this trans ID.
-			nextTransID++;
+			submit(new PlaylistAction(cmd));
 		} 
 		else if (command.equals(REMOVE_CMD)) 
 		{
@@ -111,12 +151,7 @@ public class Launcher {
 			ArrayList<String> cmd = new ArrayList<String>();
 			cmd.add("Delete");
 			cmd.add(parameters[0]);
-			PlaylistAction pa = new PlaylistAction(cmd);
-			
-			processes.get(0).start(nextTransID, pa);
-			
-			// Don't reuse this trans ID.
-			nextTransID++;
+			submit(new PlaylistAction(cmd));
 		}
 		else if (command.equals(EDIT_CMD)) 
 		{
@@ -128,12 +163,7 @@ public class Launcher {
 			cmd.add(parameters[0]);
 			cmd.add(parameters[1]);
 			cmd.add(parameters[2]);
-			PlaylistAction pa = new PlaylistAction(cmd);
-			
-			processes.get(0).start(nextTransID, pa);
-			
-			// Don't reuse this trans ID.
-			nextTransID++;
+			submit(new PlaylistAction(cmd));
 		} 
 		else if (command.equals(CREATE_PROCESSES_CMD)) {
 			System.out.println("Creating " + parameters[0] + " \"processes.\"");
@@ -220,6 +250,79 @@ public class Launcher {
 		{
 			printDtLogs();
 		}
+		else if (command.equals(READ_CMD)) 
+		{
+			System.out.println(processes.get(Integer.parseInt(parameters[0])).readLocal(parameters[1]));
+		}
+		else if (command.equals(CONSISTENT_READ_CMD)) 
+		{
+			consistentRead(Integer.parseInt(parameters[0]), parameters[1]);
+		}
+		else if (command.equals(LIST_CMD)) 
+		{
+			listSongs(Integer.parseInt(parameters[0]), 
+					parameters.length > 1 ? parameters[1] : "", 
+					parameters.length > 2 ? parameters[2] : null);
+		}
+		else if (command.equals(CATCH_UP_CMD)) 
+		{
+			System.out.println("Process " + parameters[0] + " will fetch a snapshot from a live peer.");
+			processes.get(Integer.parseInt(parameters[0])).catchUp();
+		}
+		else if (command.equals(BY_URL_CMD)) 
+		{
+			System.out.println(processes.get(Integer.parseInt(parameters[0])).findLocalByUrl(parameters[1]));
+		}
+		else if (command.equals(METRICS_CMD)) 
+		{
+			printMetrics();
+		}
+		else if (command.equals(TRACING_CMD)) 
+		{
+			Tracer.setEnabled(parameters[0].equals("on"));
+			System.out.println("Tracing is now " + parameters[0] + ".");
+		}
+		else if (command.equals(ELECTION_CMD)) 
+		{
+			Process3PC.setSkipAheadElection(parameters[0].equals("skip"));
+			System.out.println("Elections now " + (Process3PC.isSkipAheadElection()
+					? "skip to the lowest live process." : "go to the next process."));
+		}
+		else if (command.equals(PRESUMED_ABORT_CMD)) 
+		{
+			Process3PC.setPresumedAbort(parameters[0].equals("on"));
+			System.out.println("Presumed abort is now " + (Process3PC.isPresumedAbort() ? "on" : "off") + ".");
+		}
+		else if (command.equals(STORAGE_CMD)) 
+		{
+			Storage.forName(parameters[0]);
+			if (parameters.length == 1)
+			{
+				storage = parameters[0];
+				processStorage.clear();
+				System.out.println("Processes created from now on will use " + storage + " storage.");
+			}
+			for (int i = 1; i < parameters.length; i++)
+			{
+				processStorage.put(Integer.parseInt(parameters[i]), parameters[0]);
+				System.out.println("Process " + parameters[i] + " will use " + parameters[0] + " storage when created.");
+			}
+		}
+		else if (command.equals(CRITICAL_PATH_CMD)) 
+		{
+			printCriticalPath(Integer.parseInt(parameters[0]));
+		}
+		else if (command.equals(LOG_CMD)) 
+		{
+			setLogLevel(parameters);
+		}
+		else if (command.equals(TRANSPORT_CMD)) 
+		{
+			transport = parameters[0];
+			loopbackCopy = parameters.length > 1 && parameters[1].equals("copy");
+			System.out.println("Processes created from now on will use the " + transport + " transport"
+					+ (loopbackCopy ? " (with defensive copies)." : "."));
+		}
 		else 
 		{
 			System.out.println("Unrecognized command. Closing all net controllers. Program terminating.");
@@ -232,6 +335,20 @@ public class Launcher {
 		}
 	}
 
+	/**
+	 * Submits a transaction to process 0, the coordinator of every client
+	 * change, or reports that it refused it for now.
+	 */
+	private static void submit(PlaylistAction pa) {
+		if (!processes.get(0).tryStart(nextTransID, pa)) {
+			System.out.println("Process 0 is busy; change refused. Try again later.");
+			return;
+		}
+		
+		// Don't reuse this trans ID.
+		nextTransID++;
+	}
+
 	private static void runScript(String filename) {
 		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
 			String line;
@@ -271,6 +388,7 @@ public class Launcher {
 	 */
 	private static void kill(Integer id) {
 		threads.get(id).stop();
+		processes.get(id).crash();
 
 		// Spin-wait for process to become "TERMINATED."
 		// while (!threads.get(id).getState().equals("TERMINATED")) {
@@ -330,6 +448,12 @@ public class Launcher {
 
 		// Store the number of processes to a global variable.
 		Launcher.numProcesses = numProcesses;
+		
+		if (transport.equals("loopback")) {
+			loopbackNetwork = new LoopbackNetwork(numProcesses, loopbackCopy);
+		} else {
+			loopbackNetwork = null;
+		}
 
 		for (int i = 0; i < numProcesses; i++) {
 
@@ -392,13 +516,28 @@ public class Launcher {
 			out.println("port" + i + "=" + (6100 + i));
 		}
 
+		// Storage engine for this process.
+		out.println("Storage=" + processStorage.getOrDefault(processNumber, storage));
+
+		// socket fields: Unix domain sockets instead of TCP ports.
+		if (transport.equals("unix")) {
+			String dir = System.getProperty("java.io.tmpdir");
+			for (int i = 0; i < Launcher.numProcesses; i++) {
+				out.println("socket" + i + "=" + new File(dir, "3pc-" + (6100 + i) + ".sock").getPath());
+			}
+		}
+
 		out.flush();
 		out.close();
 
 		try {
 
 			Config config = new Config(fileName);
-			nc = new NetController(config);
+			if (loopbackNetwork != null) {
+				nc = new NetController(config, loopbackNetwork.connect(processNumber));
+			} else {
+				nc = new NetController(config);
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -430,6 +569,7 @@ public class Launcher {
 	private static void printPlaylists() 
 	{
 		// Print all Playlist logs to compare.
+		Log.flush();
 		System.out.println("\n");
 		for (int i = 0; i < processes.size(); i++) {
 			processes.get(i).printPlaylist();
@@ -442,6 +582,7 @@ public class Launcher {
 	 */
 	private static void printDtLogs()
 	{
+		Log.flush();
 		System.out.println("\n");
 		for (int i = 0; i < processes.size(); i++)
 		{
@@ -449,6 +590,91 @@ public class Launcher {
 		}
 	}
 
+	/**
+	 * Prints the counters and latency histograms of all processes. The same
+	 * data is available over JMX under threepc:type=Metrics.
+	 */
+	private static void printMetrics()
+	{
+		Log.flush();
+		System.out.println("\n");
+		for (MetricsRegistry registry : MetricsRegistry.all().values())
+		{
+			System.out.println(registry.dump());
+		}
+	}
+
+	/**
+	 * Reads a song through the given process once it has caught up with
+	 * every transaction committed anywhere, and prints the result.
+	 */
+	private static void consistentRead(int process, String songName) throws InterruptedException
+	{
+		try
+		{
+			// A killed process never completes the read.
+			System.out.println(processes.get(process).readConsistent(songName).get(5, TimeUnit.SECONDS));
+		}
+		catch (ExecutionException e)
+		{
+			System.out.println("Read failed: " + e.getCause().getMessage());
+		}
+		catch (TimeoutException e)
+		{
+			System.out.println("Read failed: process " + process + " did not answer.");
+		}
+	}
+
+	/**
+	 * Prints one page of a process's songs with the given name prefix,
+	 * and the command that prints the next page.
+	 */
+	private static void listSongs(int process, String prefix, String after)
+	{
+		List<Map.Entry<String, String>> page = processes.get(process).listLocal(prefix, after, LIST_PAGE_SIZE);
+		for (Map.Entry<String, String> song : page)
+		{
+			System.out.println(song.getKey() + ", " + song.getValue());
+		}
+		if (page.size() == LIST_PAGE_SIZE)
+		{
+			System.out.println("Next page: " + LIST_CMD + " " + process + " " + prefix + " " + page.get(page.size() - 1).getKey());
+		}
+	}
+
+	/**
+	 * Prints the critical path of a transaction, reconstructed from the
+	 * trace files of all processes (including ones in other JVMs that share
+	 * this working directory).
+	 */
+	private static void printCriticalPath(int transactionId)
+	{
+		Tracer.flushAll();
+		Log.flush();
+		try
+		{
+			CriticalPath.print(transactionId, new File("."));
+		}
+		catch (IOException e)
+		{
+			System.out.println("Could not read trace files: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the console log level and, optionally, a transaction to trace
+	 * at every level (or -1 to stop tracing).
+	 */
+	private static void setLogLevel(String[] parameters)
+	{
+		Log.setLevel(Level.parse(parameters[0]));
+		if (parameters.length > 1)
+		{
+			Log.trace(Integer.parseInt(parameters[1]));
+		}
+		System.out.println("Log level is now " + Log.getLevel() + ".");
+	}
+
 	/**********************************************************************
 	 * TEST METHODS
 	 **********************************************************************/
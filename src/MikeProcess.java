@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 
 import framework.NetController;
+import framework.SocketTransport;
 
 /**
  * Each "process" will continuously run code in the "run" method to implement
@@ -22,8 +23,10 @@ public class MikeProcess implements Runnable {
 	// is 12, etc.
 	private long processID;
 	
-	// This process' net controller.
+	// This process' net controller, and its TCP transport, which carries
+	// the raw string messages this process exchanges.
 	private NetController nc;
+	private SocketTransport sockets;
 	
 	/**
 	 * Constructor.
@@ -34,6 +37,7 @@ public class MikeProcess implements Runnable {
 		
 		this.processNumber = processNumber;
 		this.nc = nc;
+		this.sockets = (SocketTransport)nc.getTransport();
 		
 		if (processNumber == 0) {
 			this.isCoordinator = true;
@@ -93,7 +97,7 @@ public class MikeProcess implements Runnable {
 		} else {
 			
 			// If participant, send vote (send YES for now).
-			nc.sendMsg(0, "YES");
+			sockets.sendMsg(0, "YES");
 			println("Sent YES from p " + this.processNumber);
 		}
 		
@@ -111,7 +115,7 @@ public class MikeProcess implements Runnable {
 					if (i == this.processNumber) {
 						// Do not send message to yourself.
 					} else {
-						nc.sendMsg(i, "PRE-COMMIT");
+						sockets.sendMsg(i, "PRE-COMMIT");
 					}
 				}
 			}
@@ -133,9 +137,9 @@ public class MikeProcess implements Runnable {
 		/*
 		// Send a message from p0 to p1.
 		if (this.processNumber == 0) {
-			nc.sendMsg(1, "HI THERE from p_0");
+			sockets.sendMsg(1, "HI THERE from p_0");
 		} else if (this.processNumber == 1) {
-			nc.sendMsg(0,  "HI THERE FROM p_1");
+			sockets.sendMsg(0,  "HI THERE FROM p_1");
 		}
 		
 		
@@ -172,7 +176,7 @@ public class MikeProcess implements Runnable {
 			if (i == this.processNumber) {
 				
 			} else {
-				nc.sendMsg(i, s);
+				sockets.sendMsg(i, s);
 			}
 		}
 	}
@@ -195,7 +199,7 @@ public class MikeProcess implements Runnable {
 		while (true) {
 			
 			// See how many messages are waiting right now.
-			messages = (ArrayList<String>)nc.getReceivedMsgs();
+			messages = (ArrayList<String>)sockets.getReceivedMsgs();
 			
 			// Exhaust the messages that were received into the
 			// return list.
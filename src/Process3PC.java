@@ -1,17 +1,35 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
 
 import action.*;
+import framework.Clock;
+import framework.Config;
 import framework.NetController;
+import log.ApplyStage;
 import log.PlaylistLog;
+import log.Storage;
 import log.TransactionLog;
+import logging.Level;
+import logging.Log;
+import metrics.MetricsRegistry;
+import playlist.LockTable;
 import playlist.Playlist;
 import playlist.PlaylistAction;
+import playlist.PlaylistSnapshot;
+import playlist.ReadResult;
+import tracing.Tracer;
 
 public class Process3PC implements Runnable {
 	
@@ -102,6 +120,19 @@ public class Process3PC implements Runnable {
 		// Hacky mechanism to let us know when monitor is accurate.
 		long monitorUp;
 		
+		// System.nanoTime() at which this process began coordinating, sent
+		// VOTE-REQ and sent PRECOMMIT (0 if it never did). Used for metrics.
+		long beganAt;
+		
+		// Commit sequence of this transaction's Playlist action in the apply
+		// stage (0 if it was never submitted there).
+		long applySequence;
+		
+		// Trace this transaction's spans belong to (0 until first traced).
+		long traceId;
+		long voteRequestedAt;
+		long precommitSentAt;
+		
 		Transaction(Integer transactionId, Role role, State state, PlaylistAction action)
 		{
 			this.id 			= transactionId;
@@ -135,8 +166,90 @@ public class Process3PC implements Runnable {
 		Yes, No
 	}
 	
+	/**
+	 * A consistent read waiting for replies from the live processes and
+	 * for the transactions they reported to be applied here.
+	 */
+	private class PendingRead
+	{
+		int id;
+		String songName;
+		CompletableFuture<ReadResult> result;
+		long startedAt;
+		long deadline;
+		
+		// Processes that have not replied yet.
+		Set<Integer> waitingOn;
+		
+		// Transactions that must be committed here before answering.
+		Set<Integer> required;
+	}
+	
+	/**
+	 * A Playlist snapshot being streamed to a peer.
+	 */
+	private class OutgoingSnapshot
+	{
+		int destination;
+		int snapshotId;
+		int nextChunk;
+		int nextSong;
+		ArrayList<String> names;
+		ArrayList<String> urls;
+		ArrayList<Integer> committed;
+		int decidedBelow;
+	}
+	
+	/**
+	 * A Playlist snapshot being received from a peer.
+	 */
+	private class IncomingSnapshot
+	{
+		int from;
+		int snapshotId;
+		int nextChunk;
+		long lastChunkAt;
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> urls = new ArrayList<String>();
+	}
+	
 	// State for all active transactions.
 	private Hashtable<Integer, Transaction> transactions;
+	
+	// How long (ms) a consistent read may wait for replies and commits.
+	private static final long READ_TIMEOUT = 3000;
+	
+	// Consistent reads submitted by other threads, and those in progress.
+	private ConcurrentLinkedQueue<PendingRead> submittedReads;
+	private Hashtable<Integer, PendingRead> pendingReads;
+	private int nextReadId;
+	
+	// Buffered read-index messages (they belong to no transaction).
+	private LinkedList<Action> recvReadIndex;
+	
+	// Every transaction with a lower ID is decided (committed or aborted)
+	// here. Only moves forward.
+	private int decidedBelow;
+	
+	// Snapshot state transfer: songs per chunk, chunks sent to each peer
+	// per pass of the main loop, and how long (ms) a transfer may stall
+	// before it is abandoned and requested again.
+	private static final int SNAPSHOT_CHUNK_SONGS = 512;
+	private static final int SNAPSHOT_CHUNKS_PER_STEP = 4;
+	private static final long SNAPSHOT_TIMEOUT = 3000;
+	
+	// Set when this process should fetch a snapshot from a live peer (on
+	// recovery, or by catchUp()), and the time before which it should not
+	// ask because the monitor does not yet know who is live.
+	private volatile boolean catchUpRequested;
+	private long catchUpAfter;
+	
+	private IncomingSnapshot incomingSnapshot;
+	private LinkedList<OutgoingSnapshot> outgoingSnapshots;
+	private int nextSnapshotId;
+	
+	// Buffered snapshot messages (they belong to no transaction).
+	private LinkedList<Action> recvSnapshot;
 
 	// An outgoing queue of PROTOCOL messages. This is used to support the testing command
 	// partialMessage. During the core part of the main processing loop, we only enqueue 
@@ -150,11 +263,67 @@ public class Process3PC implements Runnable {
 	// not delivered. With the protocol queue, both of these outgoing messages would be 
 	// enqueued, but only the first would be sent before HALT. Later on, when RESUME is
 	// sent, the message to p(2) is still first in the queue.
-	private LinkedList<Action> protocolSendQueue;
+	private LinkedList<Outgoing> protocolSendQueue;
+	
+	// While a batched STATE-REQ reply is handled: the COMMITs and ABORTs to
+	// send, by destination, to go out as one BatchDecision each.
+	private Hashtable<Integer, ArrayList<Integer>> batchedCommits;
+	private Hashtable<Integer, ArrayList<Integer>> batchedAborts;
+	
+	// Messages (one per destination) waiting in protocolSendQueue. While it
+	// is at MAX_SEND_BACKLOG, no new transaction is started here.
+	private volatile int sendBacklog;
+	private static final int MAX_SEND_BACKLOG = 4096;
+	
+	// Election mode shared by all processes: if set, an election skips
+	// straight to the lowest live process after the dead coordinator rather
+	// than to the next ID (see nextUP).
+	private static volatile boolean skipAheadElection = false;
+	
+	// Logging mode shared by all processes: if set, START3PC and ABORT
+	// records are not forced to disk, and a coordinator that recovers with
+	// no record after its START3PC presumes the transaction aborted.
+	private static volatile boolean presumedAbort = false;
+	
+	// Song-name locks of the transactions this process coordinates or voted
+	// YES on and has not yet seen decided, and the VOTE-REQs and transactions
+	// to coordinate (in arrival order) waiting for older transactions to
+	// release theirs.
+	private LockTable locks;
+	private LinkedList<Start3PC> lockWaiters;
+	private LinkedList<BeginProtocol> beginWaiters;
+	
+	/**
+	 * An entry of the outgoing queue: one action and the processes it still
+	 * has to go to. A fan-out is encoded once for all its destinations, but
+	 * partialMessage still counts one message per destination, so an entry
+	 * may be sent in part and finished after the halt is lifted.
+	 */
+	private class Outgoing
+	{
+		Action action;
+		List<Integer> destinations;
+		
+		Outgoing(Action action, List<Integer> destinations)
+		{
+			this.action 		= action;
+			this.destinations 	= destinations;
+		}
+	}
 	
 	// Buffered queue of received protocol messages (i.e., keep-alives have been filtered)
 	private LinkedList<Action> protocolRecvQueue;
 	
+	// BeginProtocols in protocolRecvQueue (guarded by it). While it is at
+	// MAX_PENDING_BEGINS, tryStart refuses new transactions.
+	private int pendingBegins;
+	private static final int MAX_PENDING_BEGINS = 1024;
+	
+	// True while some undecided transaction still awaits the total failure
+	// check set up by recover(). Unless it is, or a process is dead, step()
+	// has no reason to look at every transaction.
+	private boolean totalFailurePending;
+	
 	// Buffered list of received keep-alive messages to report to monitor.
 	private LinkedList<KeepAlive> recvKeepAlive;
 	
@@ -164,6 +333,21 @@ public class Process3PC implements Runnable {
 	// Stable storage -- Playlist data.
 	private PlaylistLog playlistLog;
 	
+	// Applies committed actions to playlistLog off the protocol thread, and
+	// the committed transactions (in commit order) still holding locks
+	// until it has applied them.
+	private ApplyStage applyStage;
+	private LinkedList<Transaction> unapplied;
+	
+	// Whether new processes apply commits on a thread of their own (true),
+	// or inline on the protocol thread (the Simulator, for determinism).
+	private static volatile boolean asyncApply = true;
+	
+	// Whether this process's storage engine keeps one log whose COMMIT
+	// records carry the Playlist's changes, the Playlist being rebuilt from
+	// it on recovery, rather than a DT log and a Playlist file.
+	private boolean unifiedLog;
+	
 	// This process's id
 	private Integer id = 0;
 	
@@ -191,6 +375,18 @@ public class Process3PC implements Runnable {
 	
 	private NetController network;
 	
+	// Source of time for the monitor and total failure recovery.
+	private Clock clock;
+	
+	// Latency histograms and counters for this process.
+	private MetricsRegistry metrics;
+	
+	// Span recorder for this process, and the trace and span of the action
+	// currently being handled (0 outside of handleTraced).
+	private Tracer tracer;
+	private long currentTraceId;
+	private long currentSpanId;
+	
 	/**
 	 * Constructor.
 	 * @param id		ID of this process
@@ -198,17 +394,45 @@ public class Process3PC implements Runnable {
 	 * @param numProcs	Total number of processes
 	 */
 	public Process3PC(Integer id, NetController network, Integer numProcs, boolean clearStableStorage)
+	{
+		this(id, network, numProcs, clearStableStorage, Clock.SYSTEM);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param id		ID of this process
+	 * @param network	Network to communicate with all other processes
+	 * @param numProcs	Total number of processes
+	 * @param clock		Source of time (the Simulator passes a virtual clock)
+	 */
+	public Process3PC(Integer id, NetController network, Integer numProcs, boolean clearStableStorage, Clock clock)
 	{
 		this.id 					= id;
+		this.clock 					= clock;
+		this.metrics 				= MetricsRegistry.forProcess(id);
+		this.tracer 				= Tracer.forProcess(id);
 		this.numProcesses			= numProcs;
 		this.network 				= network;
-		this.dtLog 					= new TransactionLog(clearStableStorage, "process" + this.id.toString() + ".log");
-		this.playlistLog            = new PlaylistLog(clearStableStorage, "process" + this.id.toString() + "Playlist.log");
+		Config config 				= network.getConfig();
+		Storage storage 			= Storage.forName(config.storage == null ? "file" : config.storage);
+		String storageDir 			= config.storageDir == null ? "." : config.storageDir;
+		this.dtLog 					= storage.openTransactionLog(storageDir, this.id, clearStableStorage);
+		this.playlistLog            = storage.openPlaylistLog(storageDir, this.id, clearStableStorage);
+		this.unifiedLog 			= storage.isUnified();
+		this.unapplied 				= new LinkedList<Transaction>();
 		this.protocolRecvQueue 		= new LinkedList<Action>();
-		this.protocolSendQueue		= new LinkedList<Action>();
+		this.protocolSendQueue		= new LinkedList<Outgoing>();
 		this.recvKeepAlive			= new LinkedList<KeepAlive>();
 		this.transactions 			= new Hashtable<Integer, Transaction>();
-		this.monitor				= new ProcessMonitor(this.id, numProcs, this.network, 1500, 250);
+		this.submittedReads 		= new ConcurrentLinkedQueue<PendingRead>();
+		this.pendingReads 			= new Hashtable<Integer, PendingRead>();
+		this.recvReadIndex 			= new LinkedList<Action>();
+		this.outgoingSnapshots 		= new LinkedList<OutgoingSnapshot>();
+		this.recvSnapshot 			= new LinkedList<Action>();
+		this.locks 					= new LockTable();
+		this.lockWaiters 			= new LinkedList<Start3PC>();
+		this.beginWaiters 			= new LinkedList<BeginProtocol>();
+		this.monitor				= new ProcessMonitor(this.id, numProcs, this.network, 1500, 250, clock);
 		this.messageCount 			= 0;
 		this.haltCount    			= Integer.MAX_VALUE;
 		
@@ -216,14 +440,65 @@ public class Process3PC implements Runnable {
 		{
 			recover();
 		}
+		this.applyStage 			= new ApplyStage(this.playlistLog, this.metrics, "Apply-" + id, asyncApply);
+	}
+	
+	/**
+	 * Sets whether processes created from now on apply commits to their
+	 * Playlist on a separate thread (the default) or inline.
+	 */
+	public static void setAsyncApply(boolean async)
+	{
+		asyncApply = async;
+	}
+	
+	/**
+	 * Stops this process's apply thread as a crash would, dropping commits
+	 * it has not yet applied (recovery replays them from the DT log), and
+	 * releases its log file. Launcher calls this when it kills the process.
+	 */
+	public void crash()
+	{
+		this.applyStage.crash();
+		this.dtLog.close();
 	}
 	
 	
+	/**
+	 * Starts a transaction unless this process is falling behind on sending
+	 * (some process is slow to take its messages) or already has too many
+	 * transactions waiting to begin. Clients submit through this.
+	 * @return False if the transaction was refused and should be retried later.
+	 */
+	public synchronized boolean tryStart(Integer transactionId, PlaylistAction playlistAction)
+	{
+		synchronized(this.protocolRecvQueue)
+		{
+			if (this.sendBacklog >= MAX_SEND_BACKLOG || this.pendingBegins >= MAX_PENDING_BEGINS)
+			{
+				return false;
+			}
+			start(transactionId, playlistAction);
+			return true;
+		}
+	}
+	
+	/**
+	 * Starts a transaction, however far behind this process is. While it is
+	 * falling behind on sending, the transaction is queued and begins once
+	 * the backlog drains.
+	 */
 	public synchronized void start(Integer transactionId, PlaylistAction playlistAction)
 	{
 		synchronized(this.protocolRecvQueue)
 		{
-			this.protocolRecvQueue.add(new BeginProtocol(transactionId, this.id, this.id, playlistAction));
+			BeginProtocol begin = new BeginProtocol(transactionId, this.id, this.id, playlistAction);
+			if (Tracer.isEnabled())
+			{
+				begin.sentAt = Tracer.now();
+			}
+			this.protocolRecvQueue.add(begin);
+			this.pendingBegins++;
 		}
 	}
 	
@@ -279,77 +554,23 @@ public class Process3PC implements Runnable {
 	{
 		// Flush message queue. This clears messages sent to the process while
 		// it was dead since the NetController was never destroyed.
-		this.network.getReceivedMsgs();
+		this.network.getReceived();
 		
 		ArrayList<Action> history = this.dtLog.read();
 		
-		//**********************************************************************
-		//* When recovering, if there is a COMMIT in the stable storage
-		//* for a specific transaction, make sure that the edit/delete/add was 
-		//* carried out in the Playlist log. We assume that a write to the 
-		//* Playlist log is atomic -- either all or nothing is written. This is 
-		//* valid given our implementation, because the chances of a write to 
-		//* stable storage being interrupted by some sort of kill command is 
-		//* negligible.
-		//**********************************************************************
-		
-		// (1) Get list of transaction IDs which correspond to COMMITs from the 
-		// transaction Log
-		ArrayList<Integer> logTransIDs = new ArrayList<Integer>();
-		
-		for (int i = 0; i < history.size(); i++)
-		{
-			if (history.get(i) instanceof Commit)
-			{
-				logTransIDs.add(history.get(i).transactionID);
-			}
-		}
-		
-		// (2) Get list of transaction IDs corresponding to transactions which
-		// were carried out in the Playlist log.
-		ArrayList<Integer> playlistTransIDs = this.playlistLog.read().getTransactionsCompleted();
-		
-		// (3) Make sure that all transaction IDs corresponding to commits in the
-		// transaction log are included in the Playlist log. We know that a commit
-		// is written to the transaction log before it is carried out in the 
-		// Playlist log, therefore the set of the Playlist log's transaction IDs is 
-		// always a subset of the transaction log's. Make sure, just in case.
-		if (logTransIDs.size() < playlistTransIDs.size())
-		{
-			System.out.println("Playlist log has more transaction IDs than the"
-					+ " transaction log does. This should never happen. Terminating.");
-			System.exit(-1);
-		}
-		
-		// (4) Find any transaction IDs that are present in the transaction log,
-		// but not in the Playlist log.
-		ArrayList<Integer> transIDsToBeAdded = new ArrayList<Integer>();
+		// Transactions this process started as coordinator or voted YES on
+		// as a participant: the only ones it held locks for.
+		HashSet<Integer> locked = new HashSet<Integer>();
 		
-		for (int i = 0; i < logTransIDs.size(); i++)
+		// With a unified log the Playlist is rebuilt from the COMMIT records
+		// themselves; otherwise its file may lag the DT log.
+		if (this.unifiedLog)
 		{
-			int currTransID = logTransIDs.get(i);
-			if (!playlistTransIDs.contains(currTransID))
-			{
-				transIDsToBeAdded.add(currTransID);
-			}
+			this.playlistLog.replay(history);
 		}
-		
-		// (5) For each transaction ID we have collected, execute the corresponding
-		// transaction's playlist action in the Playlist log. This will bring
-		// consistency between the transaction log and the Playlist log.
-		for (int i = 0; i < transIDsToBeAdded.size(); i++)
+		else
 		{
-			int transID = transIDsToBeAdded.get(i);
-			
-			// Get the transaction corresponding to this trans ID.
-			Transaction t = transactions.get(transID);
-			
-			// Execute this transaction in the Playlist log.
-			try {
-				this.playlistLog.log(t.playlistAction.getCommand(), transID);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			reconcilePlaylist(history);
 		}
 		
 		// Load status of each transaction in history. We should be able to 
@@ -361,12 +582,22 @@ public class Process3PC implements Runnable {
 		for (Iterator<Action> i = history.iterator(); i.hasNext();)
 		{
 			Action a = i.next();
-			if (a instanceof Start3PC)
+			// Only the coordinator logs START3PC. Having logged nothing
+			// after it, it sent no PRECOMMIT (that is forced before it goes
+			// out), so no one can have committed.
+			if (a instanceof Start3PC && presumedAbort)
+			{
+				this.transactions.put(a.transactionID, new Transaction(a.transactionID, Role.Participant, State.Aborted, a.playlistAction));
+				this.transactions.get(a.transactionID).aborted = true;
+			}
+			else if (a instanceof Start3PC)
 			{
+				locked.add(a.transactionID);
 				this.transactions.put(a.transactionID, new Transaction(a.transactionID, Role.Participant, State.Uncertain, a.playlistAction));
 			}
 			if (a instanceof Yes)
 			{
+				locked.add(a.transactionID);
 				this.transactions.put(a.transactionID, new Transaction(a.transactionID, Role.Participant, State.Uncertain, a.playlistAction));
 			}
 			if (a instanceof Precommit)
@@ -387,27 +618,49 @@ public class Process3PC implements Runnable {
 			{
 				updateUPSet(this.transactions.get(a.transactionID), ((UP) a).getUP());
 			}
+			if (a instanceof BatchUP)
+			{
+				for (Integer id : ((BatchUP) a).getTransactionIDs())
+				{
+					Transaction t = this.transactions.get(id);
+					if (t != null)
+					{
+						t.UP = ((BatchUP) a).getUP();
+					}
+				}
+			}
+			if (a instanceof SnapshotInstalled)
+			{
+				applySnapshotDecisions(((SnapshotInstalled) a).getCommitted(), ((SnapshotInstalled) a).decidedBelow);
+			}
 		}
 		
 		// (1) For all UNCERTAIN transactions, send out to STATE-REQ to all
 		// 	   processes. This is necessary in case all other processes have 
 		//     come to a decision and are no longer planning to broadcast 
-		//     that decision to other processes.
+		//     that decision to other processes. All of them go in one
+		//     batched DEC-REQ per process.
 		// (2) For all processes COMMITTED or ABORTED transactions, broadcast
 		// 	   decisions to all live nodes.
+		ArrayList<Integer> undecided = new ArrayList<Integer>();
 		for (Iterator<Map.Entry<Integer, Transaction>> i = this.transactions.entrySet().iterator(); i.hasNext();)
 		{
 			Transaction t = i.next().getValue();
 			if (t.state == State.Uncertain || t.state == State.Committable)
 			{
-				System.out.println("Process " + this.id + " is asking other processes for decisions.");
-				sendDecisionRequest(t, getListOfAllProcesses(this.id));
+				undecided.add(t.id);
+				if (t.playlistAction != null && locked.contains(t.id))
+				{
+					this.locks.lock(t.id, t.playlistAction.getKeys());
+				}
 			}
 			if (t.state == State.Aborted)
 			{
 				sendAbort(t, this.monitor.getLive());
 			}
-			if (t.state == State.Committed)
+			// A transaction known only from an installed snapshot has no
+			// action to send; whoever lacks it catches up by snapshot too.
+			if (t.state == State.Committed && t.playlistAction != null)
 			{	
 				sendCommit(t.id, this.monitor.getLive(), t.playlistAction);
 			}
@@ -415,148 +668,795 @@ public class Process3PC implements Runnable {
 			// We can go ahead and prepare to recover from total failure in 
 			// case we do not get any useful feedback.
 			t.readyToRecoverFromTotalFailure = true;
-			t.monitorUp = System.currentTimeMillis();
-		}
-	}
-	
-	/**
-	 * This is the "life" of the process. i.e., this is the main processing loop.
-	 */
-	public void run()
-	{
-		while(true)
-		{		
-			// Receive all messages from the network and filter them into Keep-Alive and
-			// protocol queues.
-			receiveAll();
-			
-			// Update statuses of processes with received keep-alive messages.
-			// Get processes that are currently dead.
-			Collection<Integer> deadProcesses = monitor.monitor(recvKeepAlive);
-			
-			//******************************************************************
-			//* Below is protocol only (no keep-alive stuff).
-			//******************************************************************
-			
-			// A process is halted if and only if it is given a sendPartial command.
-			if (!this.halted)
-			{				
-				// Process all received messages.
-				synchronized(this.protocolRecvQueue)
-				{
-					for (Iterator<Action> i = this.protocolRecvQueue.iterator(); i.hasNext();)
-					{
-						Action a = i.next();
-						i.remove();
-						handle(a);
-					}
-				}
-
-				for (Iterator<Map.Entry<Integer, Transaction>> ti = this.transactions.entrySet().iterator(); ti.hasNext();)
-				{
-					Map.Entry<Integer, Transaction> entry = ti.next();
-					Transaction t = entry.getValue();
-					
-					// Check for total failure recovery.
-					if(t.readyToRecoverFromTotalFailure && !t.aborted && !t.committed &&
-					   (System.currentTimeMillis() - t.monitorUp > this.monitor.getStartupDelay())) 
-						// TYLER: Hack to allow monitor to properly assess live status of processes.
-					{
-						boolean lastProcessToFailIsAlive = true;
-						for(int i = t.UP; i < this.numProcesses; i++)
-						{
-							if (!this.monitor.getLive().contains(i))
-							{
-								lastProcessToFailIsAlive = false;
-							}
-						}
-						if (lastProcessToFailIsAlive)
-						{
-							System.out.println("Running last process to fail logic.");
-							t.readyToRecoverFromTotalFailure = false;
-							electionProtocol(t);
-						}
-					}
-	
-					// Notify transactions waiting on dead processes.
-					
-					for (Iterator<Integer> pi = deadProcesses.iterator(); pi.hasNext();)
-					{
-						Integer deadProcess = pi.next();
-						if (t.waitingOn.contains(deadProcess))
-						{
-							// MIKE: Pass in null for the PlaylistAction because this is not relevant
-							// here.
-							handle(new Timeout(t.id, deadProcess, this.id, null));
-						}
-					}
-				}
-				
-				// Send all outgoing messages, constrained by haltCount
-				sendAll();
-			}
+			t.monitorUp = this.clock.currentTimeMillis();
+			this.totalFailurePending = true;
 		}
-	}
-	
-	/**
-	 * Receive all messages from the network and filter them into Keep-Alive and
-	 * protocol queues. This allows us to maintain life monitoring while 
-	 * separately pausing the protocol for testing purposes.
-	 */
-	private void receiveAll()
-	{
-		List<Action> received = network.getReceived();
-		for (Iterator<Action> i = received.iterator(); i.hasNext();)
+		
+		if (!undecided.isEmpty())
 		{
-			Action a = i.next();
-			if (a instanceof KeepAlive)
+			if (Log.enabled(Level.INFO))
 			{
-				this.recvKeepAlive.add((KeepAlive)a);
+				Log.log(Level.INFO, this.id, "is asking other processes for decisions on " + undecided.size() + " transaction(s).");
 			}
-			else
+			for (Integer p : getListOfAllProcesses(this.id))
 			{
-				this.protocolRecvQueue.add(a);
-			}		
+				send(new BatchDecisionRequest(this.id, p, undecided));
+			}
 		}
+		
+		// Transactions decided while we were down and since forgotten by
+		// everyone else come back through a snapshot, once the monitor
+		// knows who is live.
+		this.catchUpRequested 	= true;
+		this.catchUpAfter 		= this.clock.currentTimeMillis() + this.monitor.getStartupDelay();
 	}
 	
 	/**
-	 * Enqueued messages are sent over the socket. We enqueue all messages and 
-	 * then send with SendAll so that we can enforce partialMessage.
+	 * Applies to the Playlist file any commit in the DT log it is missing.
 	 */
-	public void sendAll()
+	private void reconcilePlaylist(ArrayList<Action> history)
 	{
-		for(Iterator<Action> i = this.protocolSendQueue.iterator(); i.hasNext();)
+		//**********************************************************************
+		//* When recovering, if there is a COMMIT in the stable storage
+		//* for a specific transaction, make sure that the edit/delete/add was 
+		//* carried out in the Playlist log. We assume that a write to the 
+		//* Playlist log is atomic -- either all or nothing is written. This is 
+		//* valid given our implementation, because the chances of a write to 
+		//* stable storage being interrupted by some sort of kill command is 
+		//* negligible.
+		//**********************************************************************
+		
+		// (1) Get list of transaction IDs which correspond to COMMITs from the 
+		// transaction Log
+		ArrayList<Integer> logTransIDs = new ArrayList<Integer>();
+		Hashtable<Integer, PlaylistAction> committedActions = new Hashtable<Integer, PlaylistAction>();
+		
+		for (int i = 0; i < history.size(); i++)
 		{
-			if (this.messageCount >= this.haltCount)
-			{
-				this.halted = true;
-				return;
-			}
-			
-			Action a = i.next();
-			i.remove();
-			
-			System.out.println("Process " + this.id + " sending " + a);
-			
-			/*
-			if (a instanceof Start3PC)
+			if (history.get(i) instanceof Commit)
 			{
-				System.out.println(a.transactionID + ": Process " + this.id + " sent VOTE-REQ to Process " + a.destinationID);
+				logTransIDs.add(history.get(i).transactionID);
+				committedActions.put(history.get(i).transactionID, history.get(i).playlistAction);
 			}
-			
-			if (a instanceof Yes)
+			if (history.get(i) instanceof SnapshotInstalled)
 			{
-				System.out.println(a.transactionID + " Process " + this.id + " sent YES vote to Process " + a.destinationID);
+				logTransIDs.addAll(((SnapshotInstalled)history.get(i)).getCommitted());
 			}
-			*/
-			
-			this.network.sendMsg(a.destinationID, a);
-			this.messageCount += 1;
 		}
-	}
-	
-	/**
+		
+		// (2) Get list of transaction IDs corresponding to transactions which
+		// were carried out in the Playlist log.
+		ArrayList<Integer> playlistTransIDs = this.playlistLog.read().getTransactionsCompleted();
+		
+		// (3) Make sure that all transaction IDs corresponding to commits in the
+		// transaction log are included in the Playlist log. We know that a commit
+		// is written to the transaction log before it is carried out in the 
+		// Playlist log, therefore the set of the Playlist log's transaction IDs is 
+		// always a subset of the transaction log's. Make sure, just in case.
+		if (logTransIDs.size() < playlistTransIDs.size())
+		{
+			System.out.println("Playlist log has more transaction IDs than the"
+					+ " transaction log does. This should never happen. Terminating.");
+			System.exit(-1);
+		}
+		
+		// (4) Find any transaction IDs that are present in the transaction log,
+		// but not in the Playlist log.
+		ArrayList<Integer> transIDsToBeAdded = new ArrayList<Integer>();
+		
+		for (int i = 0; i < logTransIDs.size(); i++)
+		{
+			int currTransID = logTransIDs.get(i);
+			if (!playlistTransIDs.contains(currTransID))
+			{
+				transIDsToBeAdded.add(currTransID);
+			}
+		}
+		
+		// (5) For each transaction ID we have collected, execute the corresponding
+		// transaction's playlist action in the Playlist log. This will bring
+		// consistency between the transaction log and the Playlist log.
+		for (int i = 0; i < transIDsToBeAdded.size(); i++)
+		{
+			int transID = transIDsToBeAdded.get(i);
+			
+			// Execute this transaction in the Playlist log. Commits still
+			// queued in the apply stage when we crashed end up here.
+			try {
+				this.playlistLog.log(committedActions.get(transID).getCommand(), transID);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * This is the "life" of the process. i.e., this is the main processing loop.
+	 */
+	public void run()
+	{
+		while(true)
+		{
+			step();
+		}
+	}
+	
+	/**
+	 * One pass of the main processing loop. The Simulator calls this directly
+	 * to drive a process deterministically on a virtual clock.
+	 */
+	public void step()
+	{
+		// Receive all messages from the network and filter them into Keep-Alive and
+		// protocol queues.
+		receiveAll();
+		
+		// Update statuses of processes with received keep-alive messages.
+		// Get processes that are currently dead.
+		Collection<Integer> deadProcesses = monitor.monitor(recvKeepAlive);
+		
+		// Reads and state transfer are served even while the protocol is halted.
+		advanceDecidedBelow();
+		serveReads();
+		serveSnapshots();
+		
+		//******************************************************************
+		//* Below is protocol only (no keep-alive stuff).
+		//******************************************************************
+		
+		// A process is halted if and only if it is given a sendPartial command.
+		if (!this.halted)
+		{				
+			// Process all received messages.
+			synchronized(this.protocolRecvQueue)
+			{
+				for (Iterator<Action> i = this.protocolRecvQueue.iterator(); i.hasNext();)
+				{
+					Action a = i.next();
+					
+					// Admission control: new transactions wait for the send backlog.
+					if (a instanceof BeginProtocol && this.sendBacklog >= MAX_SEND_BACKLOG)
+					{
+						continue;
+					}
+					i.remove();
+					if (a instanceof BeginProtocol)
+					{
+						this.pendingBegins--;
+					}
+					handleTraced(a);
+				}
+			}
+			
+			// VOTE-REQs whose locks were released by the decisions above.
+			releaseApplied();
+			grantLocks();
+
+			// Participants whose coordinator died elect its successor together:
+			// one election per dead coordinator (per UP value naming it),
+			// however many transactions were waiting on it.
+			Hashtable<Integer, ArrayList<Transaction>> elections = new Hashtable<Integer, ArrayList<Transaction>>();
+			
+			Collection<Transaction> watched = Collections.emptyList();
+			if (this.totalFailurePending || !deadProcesses.isEmpty())
+			{
+				watched = this.transactions.values();
+				this.totalFailurePending = false;
+			}
+			for (Transaction t : watched)
+			{
+				// Check for total failure recovery.
+				if (t.readyToRecoverFromTotalFailure && !t.aborted && !t.committed)
+				{
+					this.totalFailurePending = true;
+				}
+				if(t.readyToRecoverFromTotalFailure && !t.aborted && !t.committed &&
+				   (this.clock.currentTimeMillis() - t.monitorUp > this.monitor.getStartupDelay())) 
+					// TYLER: Hack to allow monitor to properly assess live status of processes.
+				{
+					boolean lastProcessToFailIsAlive = true;
+					for(int i = coordinatorOf(t.UP); i < this.numProcesses; i++)
+					{
+						if (!this.monitor.getLive().contains(i))
+						{
+							lastProcessToFailIsAlive = false;
+						}
+					}
+					if (lastProcessToFailIsAlive)
+					{
+						if (Log.enabled(Level.INFO, t.id))
+						{
+							Log.log(Level.INFO, this.id, t.id, "running last process to fail logic.", null);
+						}
+						t.readyToRecoverFromTotalFailure = false;
+						electionProtocol(t);
+					}
+				}
+	
+				// Notify transactions waiting on dead processes.
+				
+				for (Iterator<Integer> pi = deadProcesses.iterator(); pi.hasNext();)
+				{
+					Integer deadProcess = pi.next();
+					if (t.waitingOn.contains(deadProcess))
+					{
+						this.metrics.increment(MetricsRegistry.TIMEOUTS);
+						if (deadProcess.equals(coordinatorOf(t.UP)) && t.role == Role.Participant)
+						{
+							if (!elections.containsKey(t.UP))
+							{
+								elections.put(t.UP, new ArrayList<Transaction>());
+							}
+							elections.get(t.UP).add(t);
+						}
+						else
+						{
+							// MIKE: Pass in null for the PlaylistAction because this is not relevant
+							// here.
+							handleTraced(new Timeout(t.id, deadProcess, this.id, null));
+						}
+					}
+				}
+			}
+			
+			for (Map.Entry<Integer, ArrayList<Transaction>> election : elections.entrySet())
+			{
+				electionProtocol(election.getValue(), nextUP(election.getKey()));
+			}
+			
+			// Send all outgoing messages, constrained by haltCount
+			sendAll();
+		}
+	}
+	
+	/**
+	 * Receive all messages from the network and filter them into Keep-Alive and
+	 * protocol queues. This allows us to maintain life monitoring while 
+	 * separately pausing the protocol for testing purposes.
+	 */
+	private void receiveAll()
+	{
+		List<Action> received = network.getReceived();
+		for (Iterator<Action> i = received.iterator(); i.hasNext();)
+		{
+			Action a = i.next();
+			if (a instanceof KeepAlive)
+			{
+				this.recvKeepAlive.add((KeepAlive)a);
+			}
+			else if (a instanceof ReadIndexRequest || a instanceof ReadIndexReply)
+			{
+				this.recvReadIndex.add(a);
+			}
+			else if (a instanceof SnapshotRequest || a instanceof SnapshotChunk)
+			{
+				this.recvSnapshot.add(a);
+			}
+			else
+			{
+				this.protocolRecvQueue.add(a);
+			}		
+		}
+	}
+	
+	/**
+	 * Returns this process's current value for a song without contacting
+	 * anyone. The result may miss recently committed transactions; it is
+	 * tagged with the last one applied. Safe to call from any thread.
+	 */
+	public ReadResult readLocal(String songName)
+	{
+		return this.playlistLog.lookup(songName, false);
+	}
+	
+	/**
+	 * Returns up to limit of this process's songs whose names start with
+	 * prefix, in name order, starting after the name "after" (null for the
+	 * first page). Local and possibly stale, like readLocal.
+	 */
+	public List<Map.Entry<String, String>> listLocal(String prefix, String after, int limit)
+	{
+		return this.playlistLog.page(prefix, after, limit);
+	}
+	
+	/**
+	 * Returns the names of this process's songs with the given URL. Local
+	 * and possibly stale, like readLocal.
+	 */
+	public Collection<String> findLocalByUrl(String URL)
+	{
+		return this.playlistLog.songsByUrl(URL);
+	}
+	
+	/**
+	 * Reads a song after making sure this process has applied every
+	 * transaction that any live process has committed or is Committable
+	 * in (and so will commit). Costs one message round trip to each live
+	 * process; nothing is written to the DT log. Safe to call from any
+	 * thread; the future completes on this process's thread, or fails
+	 * with a TimeoutException if the answer is not ready in READ_TIMEOUT.
+	 */
+	public CompletableFuture<ReadResult> readConsistent(String songName)
+	{
+		PendingRead read 	= new PendingRead();
+		read.songName 		= songName;
+		read.result 		= new CompletableFuture<ReadResult>();
+		this.submittedReads.add(read);
+		return read.result;
+	}
+	
+	/**
+	 * Starts submitted consistent reads, answers and collects read-index
+	 * messages, and completes reads that are ready.
+	 */
+	private void serveReads()
+	{
+		Collection<Integer> live = this.monitor.getLive();
+		long now = this.clock.currentTimeMillis();
+		
+		for (PendingRead read; (read = this.submittedReads.poll()) != null;)
+		{
+			read.id 		= this.nextReadId++;
+			read.startedAt 	= System.nanoTime();
+			read.deadline 	= now + READ_TIMEOUT;
+			read.waitingOn 	= new HashSet<Integer>();
+			read.required 	= new HashSet<Integer>(commitCertain(this.decidedBelow));
+			for (Integer p : live)
+			{
+				if (!p.equals(this.id))
+				{
+					read.waitingOn.add(p);
+					this.network.sendMsg(p, new ReadIndexRequest(read.id, this.id, p, this.decidedBelow));
+				}
+			}
+			this.pendingReads.put(read.id, read);
+		}
+		
+		for (Action a : this.recvReadIndex)
+		{
+			if (a instanceof ReadIndexRequest)
+			{
+				ReadIndexRequest request = (ReadIndexRequest)a;
+				this.network.sendMsg(a.senderID, new ReadIndexReply(request.readId, this.id, a.senderID, commitCertain(request.decidedBelow)));
+			}
+			else
+			{
+				ReadIndexReply reply = (ReadIndexReply)a;
+				PendingRead read = this.pendingReads.get(reply.readId);
+				if (read != null)
+				{
+					read.waitingOn.remove(a.senderID);
+					read.required.addAll(reply.getCommitCertain());
+				}
+			}
+		}
+		this.recvReadIndex.clear();
+		
+		for (Iterator<PendingRead> i = this.pendingReads.values().iterator(); i.hasNext();)
+		{
+			PendingRead read = i.next();
+			
+			// A process that died will never reply.
+			read.waitingOn.retainAll(live);
+			
+			boolean ready = read.waitingOn.isEmpty();
+			for (Iterator<Integer> r = read.required.iterator(); ready && r.hasNext();)
+			{
+				Transaction t = this.transactions.get(r.next());
+				ready = t != null && applied(t);
+			}
+			
+			if (ready)
+			{
+				this.metrics.recordSince(MetricsRegistry.READ_CONSISTENT, read.startedAt);
+				read.result.complete(this.playlistLog.lookup(read.songName, true));
+				i.remove();
+			}
+			else if (now > read.deadline)
+			{
+				read.result.completeExceptionally(new TimeoutException("Process " + this.id + " could not serve read of " 
+						+ read.songName + " (waiting on " + read.waitingOn + ", required " + read.required + ")"));
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Moves decidedBelow past every transaction decided here.
+	 */
+	private void advanceDecidedBelow()
+	{
+		while (this.transactions.containsKey(this.decidedBelow) && 
+			   (this.transactions.get(this.decidedBelow).committed || this.transactions.get(this.decidedBelow).aborted))
+		{
+			this.decidedBelow++;
+		}
+	}
+	
+	/**
+	 * Asks this process to fetch a Playlist snapshot from a live peer and
+	 * install it if the peer is further along. Safe to call from any thread.
+	 */
+	public void catchUp()
+	{
+		this.catchUpRequested = true;
+	}
+	
+	/**
+	 * Requests a snapshot if one is wanted, answers snapshot requests,
+	 * streams outgoing snapshots a few chunks at a time, and assembles and
+	 * installs incoming ones.
+	 */
+	private void serveSnapshots()
+	{
+		long now = this.clock.currentTimeMillis();
+		
+		if (this.catchUpRequested && this.incomingSnapshot == null && now >= this.catchUpAfter)
+		{
+			for (Integer p : this.monitor.getLive())
+			{
+				if (!p.equals(this.id))
+				{
+					this.catchUpRequested 			= false;
+					this.incomingSnapshot 			= new IncomingSnapshot();
+					this.incomingSnapshot.from 		= p;
+					this.incomingSnapshot.lastChunkAt = now;
+					this.network.sendMsg(p, new SnapshotRequest(this.id, p, this.decidedBelow));
+					break;
+				}
+			}
+		}
+		
+		for (Iterator<Action> i = this.recvSnapshot.iterator(); i.hasNext();)
+		{
+			Action a = i.next();
+			if (a instanceof SnapshotRequest)
+			{
+				// A snapshot must include every commit below decidedBelow,
+				// so wait for the apply stage to catch up.
+				if (!this.applyStage.isDrained())
+				{
+					continue;
+				}
+				startSnapshot((SnapshotRequest)a);
+			}
+			else
+			{
+				receiveSnapshotChunk((SnapshotChunk)a, now);
+			}
+			i.remove();
+		}
+		
+		for (Iterator<OutgoingSnapshot> i = this.outgoingSnapshots.iterator(); i.hasNext();)
+		{
+			OutgoingSnapshot s = i.next();
+			for (int c = 0; c < SNAPSHOT_CHUNKS_PER_STEP && this.network.credits(s.destination) > 0; c++)
+			{
+				int end 	= Math.min(s.nextSong + SNAPSHOT_CHUNK_SONGS, s.names.size());
+				boolean last = end == s.names.size();
+				this.network.sendMsg(s.destination, new SnapshotChunk(this.id, s.destination, s.snapshotId, s.nextChunk,
+						s.names.subList(s.nextSong, end), s.urls.subList(s.nextSong, end), last, last ? s.committed : null, s.decidedBelow));
+				s.nextChunk++;
+				s.nextSong = end;
+				if (last)
+				{
+					i.remove();
+					break;
+				}
+			}
+		}
+		
+		// Give up on a stalled transfer (e.g., the peer died) and ask again.
+		if (this.incomingSnapshot != null && now - this.incomingSnapshot.lastChunkAt > SNAPSHOT_TIMEOUT)
+		{
+			this.incomingSnapshot = null;
+			this.catchUpRequested = true;
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the Playlist for a peer, or tells the peer it is
+	 * up to date.
+	 */
+	private void startSnapshot(SnapshotRequest request)
+	{
+		if (request.decidedBelow >= this.decidedBelow)
+		{
+			ArrayList<String> none = new ArrayList<String>();
+			this.network.sendMsg(request.senderID, new SnapshotChunk(this.id, request.senderID, this.nextSnapshotId++, 0, 
+					none, none, true, null, this.decidedBelow));
+			return;
+		}
+		
+		OutgoingSnapshot s 	= new OutgoingSnapshot();
+		s.destination 		= request.senderID;
+		s.snapshotId 		= this.nextSnapshotId++;
+		s.names 			= new ArrayList<String>();
+		s.urls 				= new ArrayList<String>();
+		s.committed 		= this.playlistLog.snapshot(s.names, s.urls);
+		s.decidedBelow 		= this.decidedBelow;
+		this.outgoingSnapshots.add(s);
+	}
+	
+	/**
+	 * Adds a chunk to the snapshot being received, installing it once the
+	 * last chunk is in. Chunks out of order mean one was lost, so the
+	 * transfer starts over.
+	 */
+	private void receiveSnapshotChunk(SnapshotChunk chunk, long now)
+	{
+		IncomingSnapshot in = this.incomingSnapshot;
+		if (in == null || chunk.senderID != in.from)
+		{
+			return;
+		}
+		if (chunk.index != in.nextChunk || (chunk.index > 0 && chunk.snapshotId != in.snapshotId))
+		{
+			this.incomingSnapshot = null;
+			this.catchUpRequested = true;
+			return;
+		}
+		
+		in.snapshotId 	= chunk.snapshotId;
+		in.lastChunkAt 	= now;
+		in.nextChunk++;
+		in.names.addAll(chunk.getNames());
+		in.urls.addAll(chunk.getUrls());
+		
+		if (chunk.last)
+		{
+			this.incomingSnapshot = null;
+			if (chunk.getCommitted() != null)
+			{
+				installSnapshot(in, chunk.getCommitted(), chunk.decidedBelow);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the Playlist with a peer's snapshot and marks the
+	 * transactions it covers as decided, without applying them one by one.
+	 * A snapshot that lacks a transaction committed here is older than our
+	 * own state in some respect and is ignored.
+	 */
+	private void installSnapshot(IncomingSnapshot in, ArrayList<Integer> committed, int snapshotDecidedBelow)
+	{
+		HashSet<Integer> covered = new HashSet<Integer>(committed);
+		for (Transaction t : this.transactions.values())
+		{
+			if (t.committed && !covered.contains(t.id))
+			{
+				if (Log.enabled(Level.WARN))
+				{
+					Log.log(Level.WARN, this.id, "ignores snapshot from process " + in.from + ": it lacks transaction " + t.id + ".");
+				}
+				return;
+			}
+		}
+		
+		// The snapshot covers every commit still queued for the apply stage;
+		// let those land before it replaces them.
+		try
+		{
+			this.applyStage.drain();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		// Log first: if we crash after this, recovery reads the Playlist
+		// installed below as covering these transactions.
+		if (this.unifiedLog)
+		{
+			logDT(new SnapshotInstalled(this.id, committed, snapshotDecidedBelow, in.names, in.urls));
+		}
+		else
+		{
+			logDT(new SnapshotInstalled(this.id, committed, snapshotDecidedBelow));
+		}
+		this.playlistLog.install(Playlist.fromSnapshot(in.names, in.urls, committed));
+		applySnapshotDecisions(covered, snapshotDecidedBelow);
+		
+		if (Log.enabled(Level.INFO))
+		{
+			Log.log(Level.INFO, this.id, "installed a snapshot of " + in.names.size() + " songs and " + committed.size() 
+					+ " transactions from process " + in.from + ".");
+		}
+	}
+	
+	/**
+	 * Marks every transaction in covered as committed, and every other
+	 * undecided transaction below decidedBelow as aborted.
+	 */
+	private void applySnapshotDecisions(Collection<Integer> covered, int snapshotDecidedBelow)
+	{
+		for (Integer id : covered)
+		{
+			Transaction t = this.transactions.get(id);
+			if (t == null)
+			{
+				t = createTransaction(id, Role.Participant, State.Committed, null);
+			}
+			t.committed = true;
+			t.state 	= State.Committed;
+			t.waitingOn.clear();
+			this.locks.release(id);
+		}
+		for (Transaction t : this.transactions.values())
+		{
+			if (t.id < snapshotDecidedBelow && !t.committed && !t.aborted)
+			{
+				t.aborted 	= true;
+				t.state 	= State.Aborted;
+				t.waitingOn.clear();
+				this.locks.release(t.id);
+			}
+		}
+	}
+	
+	/**
+	 * @return IDs of transactions at or above the given ID that this process
+	 * 		   has committed or is Committable in.
+	 */
+	private Collection<Integer> commitCertain(int from)
+	{
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (Transaction t : this.transactions.values())
+		{
+			if (t.id >= from && (t.committed || t.state == State.Committable))
+			{
+				ids.add(t.id);
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * Enqueued messages are sent over the socket. We enqueue all messages and 
+	 * then send with SendAll so that we can enforce partialMessage.
+	 * 
+	 * Messages to a process without send credit (see NetController.credits)
+	 * stay queued, as do all later messages to it, so it still gets them in
+	 * order; other processes are not held up. A process that is not yet (or
+	 * no longer) connected has no credit, so nothing to it is lost while it
+	 * connects; but once the monitor believes it dead, what is queued for it
+	 * is dropped, as a send to a crashed process would be. A message the
+	 * transport fails to take is not counted as sent, and is retried if it
+	 * had only the one destination.
+	 */
+	public void sendAll()
+	{
+		HashSet<Integer> blocked = new HashSet<Integer>();
+		Collection<Integer> live = this.monitor.getLive();
+		for(Iterator<Outgoing> i = this.protocolSendQueue.iterator(); i.hasNext();)
+		{
+			if (this.messageCount >= this.haltCount)
+			{
+				this.halted = true;
+				break;
+			}
+			
+			Outgoing o = i.next();
+			Action a = o.action;
+			
+			// Send to the destinations with credit, as many as the halt count allows.
+			int allowed = this.haltCount - this.messageCount;
+			List<Integer> destinations 	= new ArrayList<Integer>();
+			List<Integer> held 			= new ArrayList<Integer>();
+			for (Integer d : o.destinations)
+			{
+				if (destinations.size() < allowed && !blocked.contains(d) && this.network.credits(d) > 0)
+				{
+					destinations.add(d);
+				}
+				else if (!live.contains(d) && this.network.credits(d) == 0)
+				{
+					this.metrics.increment(MetricsRegistry.SEND_FAILED + d);
+				}
+				else
+				{
+					if (destinations.size() < allowed && blocked.add(d))
+					{
+						this.metrics.increment(MetricsRegistry.FLOW_BLOCKED + d);
+					}
+					held.add(d);
+				}
+			}
+			if (destinations.isEmpty())
+			{
+				updateOutgoing(i, o, held);
+				continue;
+			}
+			
+			if (Log.enabled(Level.DEBUG, a.transactionID))
+			{
+				Log.log(Level.DEBUG, this.id, a.transactionID, 
+						destinations.size() == 1 ? "sending" : "sending to " + destinations + ":", a);
+			}
+			
+			/*
+			if (a instanceof Start3PC)
+			{
+				System.out.println(a.transactionID + ": Process " + this.id + " sent VOTE-REQ to Process " + a.destinationID);
+			}
+			
+			if (a instanceof Yes)
+			{
+				System.out.println(a.transactionID + " Process " + this.id + " sent YES vote to Process " + a.destinationID);
+			}
+			*/
+			
+			boolean sent;
+			if (Tracer.isEnabled())
+			{
+				long parent = a.spanId;
+				long start = Tracer.now();
+				a.spanId = this.tracer.newSpanId();
+				a.sentAt = start;
+				sent = transmit(destinations, a);
+				this.tracer.record(a.spanId, "send " + a.getClass().getSimpleName() + " to " + destinations,
+						a.transactionID, a.traceId, parent, start, Tracer.now());
+			}
+			else
+			{
+				sent = transmit(destinations, a);
+			}
+			
+			if (sent)
+			{
+				this.messageCount += destinations.size();
+			}
+			else if (destinations.size() == 1)
+			{
+				// Nothing was delivered: try again, ahead of anything later to it.
+				blocked.add(destinations.get(0));
+				held.add(destinations.get(0));
+			}
+			updateOutgoing(i, o, held);
+		}
+		
+		int backlog = 0;
+		for (Outgoing o : this.protocolSendQueue)
+		{
+			backlog += o.destinations.size();
+		}
+		this.sendBacklog = backlog;
+	}
+	
+	/**
+	 * Leaves a queued message with the destinations it still has to go to,
+	 * or takes it off the queue if there are none.
+	 */
+	private void updateOutgoing(Iterator<Outgoing> i, Outgoing o, List<Integer> held)
+	{
+		if (held.isEmpty())
+		{
+			i.remove();
+		}
+		else
+		{
+			o.destinations = held;
+		}
+	}
+	
+	/**
+	 * @return True if the transport took the message for every destination.
+	 */
+	private boolean transmit(List<Integer> destinations, Action a)
+	{
+		if (destinations.size() == 1)
+		{
+			return this.network.sendMsg(destinations.get(0), a);
+		}
+		else
+		{
+			return this.network.broadcast(destinations, a);
+		}
+	}
+	
+	/**
 	 * @return True if this process is the current coordinator of the transaction
 	 * with the specified ID.
 	 */
@@ -565,38 +1465,170 @@ public class Process3PC implements Runnable {
 		Transaction t = this.transactions.get(id);
 		if(t == null)
 		{
-			return false;
+			return false;
+		}
+		else
+		{
+			return t.role == Role.Coordinator;
+		}
+	}
+	
+	/**
+	 * @return True if this process has decided COMMIT for the transaction
+	 * with the specified ID.
+	 */
+	public boolean hasCommitted(Integer id)
+	{
+		Transaction t = this.transactions.get(id);
+		if(t == null)
+		{
+			return false;
+		}
+		else
+		{
+			return t.committed;
+		}
+	}
+	
+	/**
+	 * Enqueues an action to be sent to target process. Action will actually
+	 * be sent over the socket on a call to sendAll subject to halting logic.
+	 * @param action	Action to be sent.
+	 */
+	/*
+	public void send(Action action)
+	{
+		this.protocolSendQueue.add(action);
+	}
+	*/
+	
+	public void send(Action action)
+	{
+		ArrayList<Integer> destination = new ArrayList<Integer>(1);
+		destination.add(action.destinationID);
+		enqueue(action, destination);
+	}
+	
+	/**
+	 * Enqueues one action to be sent to several processes. It is encoded
+	 * once, however many destinations there are.
+	 * @param action		Action to be sent; its destinationID is ignored.
+	 * @param destinations	Processes to send it to.
+	 */
+	private void broadcast(Action action, Collection<Integer> destinations)
+	{
+		if (!destinations.isEmpty())
+		{
+			enqueue(action, new ArrayList<Integer>(destinations));
+		}
+	}
+	
+	private void enqueue(Action action, List<Integer> destinations)
+	{
+		if (Tracer.isEnabled())
+		{
+			action.traceId 	= this.currentTraceId;
+			action.spanId 	= this.currentSpanId;
+		}
+		this.protocolSendQueue.add(new Outgoing(action, destinations));
+		this.sendBacklog += destinations.size();
+	}
+	
+	/**
+	 * Handles an action, recording a receive span (from when it was sent to
+	 * now) and a handle span if tracing is on. Everything sent or logged
+	 * while handling it becomes a child of the handle span; nothing sent
+	 * afterwards is.
+	 */
+	private void handleTraced(Action action)
+	{
+		if (!Tracer.isEnabled())
+		{
+			handle(action);
+			return;
+		}
+		
+		String type 	= action.getClass().getSimpleName();
+		long received 	= Tracer.now();
+		long parent 	= action.spanId;
+		
+		Transaction t = this.transactions.get(action.transactionID);
+		if (action.traceId != 0)
+		{
+			this.currentTraceId = action.traceId;
+		}
+		else if (t != null && t.traceId != 0)
+		{
+			this.currentTraceId = t.traceId;
+		}
+		else
+		{
+			this.currentTraceId = Tracer.newTraceId();
+		}
+		
+		if (action.sentAt != 0)
+		{
+			parent = this.tracer.newSpanId();
+			this.tracer.record(parent, "receive " + type, action.transactionID, this.currentTraceId, action.spanId, action.sentAt, received);
+		}
+		
+		this.currentSpanId = this.tracer.newSpanId();
+		try
+		{
+			handle(action);
+			this.tracer.record(this.currentSpanId, "handle " + type, action.transactionID, this.currentTraceId, parent, received, Tracer.now());
+			
+			t = this.transactions.get(action.transactionID);
+			if (t != null && t.traceId == 0)
+			{
+				t.traceId = this.currentTraceId;
+			}
 		}
-		else
+		finally
 		{
-			return t.role == Role.Coordinator;
+			this.currentTraceId = 0;
+			this.currentSpanId 	= 0;
 		}
 	}
 	
-	/**
-	 * Enqueues an action to be sent to target process. Action will actually
-	 * be sent over the socket on a call to sendAll subject to halting logic.
-	 * @param action	Action to be sent.
-	 */
-	/*
-	public void send(Action action)
-	{
-		this.protocolSendQueue.add(action);
-	}
-	*/
-	
-	public void send(Action action)
-	{
-		this.protocolSendQueue.add(action);
-	}
-	
 	/**
 	 * Public handler for incoming actions.
 	 * @param action
 	 */
 	public void handle(Action action)
 	{
-		System.out.println(action.transactionID + ": Process " + this.id + " receives [" + action.toString() + "] from Process " + action.senderID);
+		if (Log.enabled(Level.DEBUG, action.transactionID))
+		{
+			Log.log(Level.DEBUG, this.id, action.transactionID, "receives", action);
+		}
+		
+		// Batched messages cover many transactions and belong to none.
+		if (action instanceof BatchDecisionRequest)
+		{
+			respondToBatchDecisionRequest((BatchDecisionRequest)action);
+			return;
+		}
+		if (action instanceof BatchDecision)
+		{
+			handleBatchDecision((BatchDecision)action);
+			return;
+		}
+		if (action instanceof BatchYouAreElected)
+		{
+			handleBatchElection((BatchYouAreElected)action);
+			return;
+		}
+		if (action instanceof BatchStateRequest)
+		{
+			respondToBatchStateRequest((BatchStateRequest)action);
+			return;
+		}
+		if (action instanceof BatchStateReply)
+		{
+			handleBatchStateReply((BatchStateReply)action);
+			return;
+		}
+		
 		Transaction transaction = transactions.get(action.transactionID);
 		
 		// This means that this Action is the first message this process has
@@ -623,27 +1655,29 @@ public class Process3PC implements Runnable {
 		}
 		
 		// Coordinator timed out; carry out election protocol.
-		if (action instanceof Timeout && action.senderID == transaction.UP)
+		if (action instanceof Timeout && action.senderID == coordinatorOf(transaction.UP))
 		{
-			updateUPSet(transaction, transaction.UP + 1);
+			updateUPSet(transaction, nextUP(transaction.UP));
 			electionProtocol(transaction);
 		}
 		
 		// Receives STATE-REQ from an elected coordinator. If the ID of this elected
-		// coordinator is less than the value of our UP set, we can ignore them. If
-		// the value of their ID is higher than our UP set, we must update our UP
-		// set to reflect that they are the new coordinator.
+		// coordinator is less than that of the coordinator our UP set names, we can
+		// ignore them. If it is higher, we must update our UP set to reflect that
+		// they are the new coordinator, and step down if we were coordinating.
 		if (action instanceof StateRequest)
 		{
-			if (action.senderID >= transaction.UP)
+			Integer coordinator = coordinatorOf(transaction.UP);
+			if (action.senderID >= coordinator)
 			{
-				updateUPSet(transaction, action.senderID);
+				if (action.senderID > coordinator)
+				{
+					transaction.role 					= Role.Participant;
+					transaction.inTerminationProtocol 	= false;
+				}
+				updateUPSet(transaction, upFor(action.senderID, transaction.UP));
 				respondToStateRequest((StateRequest)action, transaction);
 			}
-			if (action.senderID > transaction.UP)
-			{
-				transaction.role 	= Role.Participant;
-			}
 		}
 		
 		// Receives DEC-REQ from a process that has died and recovered. We can respond
@@ -658,11 +1692,9 @@ public class Process3PC implements Runnable {
 		if (action instanceof YouAreElected && transaction.role == Role.Participant)
 		{
 			updateRole(transaction.id, Role.Coordinator);
-			updateUPSet(transaction, this.id);
-			transaction.inTerminationProtocol 	= true;
-			transaction.terminationParticipants = this.monitor.getLive();
-			System.out.println("Termination Participants: " + transaction.terminationParticipants);
-			sendStateRequests(transaction);
+			updateUPSet(transaction, upFor(this.id, transaction.UP));
+			this.metrics.increment(MetricsRegistry.TERMINATION_RUNS);
+			beginTermination(transaction);
 		}
 		
 		if (transaction.inTerminationProtocol)
@@ -835,161 +1867,568 @@ public class Process3PC implements Runnable {
 	}
 	
 	/**
-	 * Creates a new 3PC transaction.
-	 * @param transactionId	ID of transaction
-	 * @param initialRole	Coordinator or Participant
-	 * @param initialState	Aborted, Uncertain, Committable, or Committed
+	 * Creates a new 3PC transaction.
+	 * @param transactionId	ID of transaction
+	 * @param initialRole	Coordinator or Participant
+	 * @param initialState	Aborted, Uncertain, Committable, or Committed
+	 */
+	private Transaction createTransaction(Integer transactionId, Role initialRole, State initialState, PlaylistAction playlistAction)
+	{
+		Transaction t = new Transaction(transactionId, initialRole, initialState, playlistAction);
+		try
+		{
+			this.transactions.put(transactionId, t);
+			return t;
+		}
+		catch (Exception ex)
+		{
+			System.out.println("ERROR: while trying to create a new transaction.");
+			return t;
+		}
+	}
+	
+	/**
+	 * Updates the state of an existing 3PC transaction.
+	 * @param id			id of process to update
+	 * @param initialState	new state, Aborted, Uncertain, Committable, Committed
+	 */
+	private void updateState(Integer transactionId, State state)
+	{
+		try
+		{
+			Transaction t = this.transactions.get(transactionId);
+			t.state = state;
+		}
+		catch (NullPointerException ex)
+		{
+			System.out.println("ERROR: while updating state. This should never happen.");
+		}
+	}
+	
+	/**
+	 * Updates the role of this process in an existing 3PC transaction.
+	 * @param transactionId	id of process to update
+	 * @param role			new role, Participant or Coordinator
+	 */
+	private void updateRole(Integer transactionId, Role role)
+	{
+		try
+		{
+			Transaction t = this.transactions.get(transactionId);
+			t.role = role;
+		}
+		catch (NullPointerException ex)
+		{
+			System.out.println("ERROR: while updating state. This should never happen.");
+		}
+	}
+	
+	/**
+	 * Writes an action to the DT log, timing the write.
+	 */
+	private void logDT(Action action)
+	{
+		logDT(action, true);
+	}
+	
+	/**
+	 * Writes an action to the DT log as above.
+	 * @param force	false to let the next forced write make it durable
+	 */
+	private void logDT(Action action, boolean force)
+	{
+		long start = System.nanoTime();
+		long traceStart = Tracer.isEnabled() ? Tracer.now() : 0;
+		this.dtLog.log(action, force);
+		this.metrics.recordSince(MetricsRegistry.DT_LOG_WRITE, start);
+		this.metrics.increment(force ? MetricsRegistry.DT_LOG_FORCED : MetricsRegistry.DT_LOG_LAZY);
+		if (traceStart != 0)
+		{
+			this.tracer.record(this.tracer.newSpanId(), "dtlog " + action.getClass().getSimpleName(),
+					action.transactionID, this.currentTraceId, this.currentSpanId, traceStart, Tracer.now());
+		}
+	}
+	
+	/**
+	 * Changes the UP set. This writes to the DT log.
+	 */
+	private void updateUPSet(Transaction t, Integer newUp)
+	{
+		t.UP = newUp;
+		logDT(new UP(t.id, this.id, this.id, t.playlistAction, t.UP));
+	}
+	
+	/**
+	 * Returns a collection of all IDs in range (0, numProcesses).
+	 * @param exclude Process to exclude (used to exclude self)
+	 */
+	private Collection<Integer> getListOfAllProcesses(Integer exclude)
+	{
+		Collection<Integer> list = new LinkedList<Integer>();
+		for(int i = 0; i < this.numProcesses; i++)
+		{
+			if (i != exclude)
+			{
+				list.add(i);
+			}
+		}
+		return list;
+	}
+	
+	/*
+	private void start3PC(Transaction t, BeginProtocol action)
+	{
+		Collection<Integer> participants = getListOfAllProcesses(this.id);
+		
+		// Controller has selected this process to be coordinator.
+		updateState(t.id, State.Aborted);
+		updateRole(t.id, Role.Coordinator);
+		
+		// Log START3PC.
+		this.dtLog.log(new Start3PC(action.transactionID, this.id, this.id, "", participants, action.playlistAction));
+		
+		// Send VOTE-REQ to all processes.		
+		for (int i = 0; i < this.numProcesses; i++)
+		{
+			if (i != this.id)
+			{
+				// MIKE: added this print out to show VOTE-REQs being sent out.
+				System.out.println(action.transactionID + ": Process " + this.id + " sends VOTE-REQ to Process " + i);
+				send(new Start3PC(action.transactionID, this.id, i, "", participants, action.playlistAction));
+			}
+		}
+		
+		// We are now waiting on responses form all processes.
+		t.waitingOn.addAll(getListOfAllProcesses(this.id));
+	}
+	*/
+	
+	// TODO: Mike changed to this new method.
+	private void start3PC(Transaction t, BeginProtocol action)
+	{
+		// Update state of this process. We are coord and in state ABORTED 
+		// since we can ABORT unilaterally.
+		updateState(t.id, State.Aborted);
+		updateRole(t.id, Role.Coordinator);
+		t.beganAt = System.nanoTime();
+		
+		if (!lockAndStart(t, action))
+		{
+			this.metrics.increment(MetricsRegistry.LOCK_WAITS);
+			this.beginWaiters.add(action);
+		}
+	}
+	
+	/**
+	 * Sends the VOTE-REQ once this process, as coordinator, holds the locks
+	 * of every song the action touches, under the same rule as a participant
+	 * voting (see lockAndVote). Where a participant would vote NO, the
+	 * coordinator aborts before asking anyone.
+	 * @return False if the transaction now waits on locks.
+	 */
+	private boolean lockAndStart(Transaction t, BeginProtocol action)
+	{
+		switch (this.locks.tryAcquire(t.id, action.playlistAction.getKeys()))
+		{
+			case Wait:
+				return false;
+			case Refused:
+				this.metrics.increment(MetricsRegistry.LOCK_CONFLICTS);
+				if (Log.enabled(Level.INFO, t.id))
+				{
+					Log.log(Level.INFO, this.id, t.id, "aborts: transaction " 
+							+ lockHolder(action.playlistAction) + " holds a song it touches.", null);
+				}
+				abort(t);
+				break;
+			default:
+				String conflict = this.playlistLog.snapshot().conflicts(action.playlistAction);
+				if (conflict != null)
+				{
+					this.metrics.increment(MetricsRegistry.VALIDATION_FAILURES);
+					if (Log.enabled(Level.INFO, t.id))
+					{
+						Log.log(Level.INFO, this.id, t.id, "aborts: " + conflict + ".", null);
+					}
+					abort(t);
+				}
+				else
+				{
+					sendVoteRequest(t, action);
+				}
+				break;
+		}
+		return true;
+	}
+	
+	/**
+	 * Logs START3PC and sends VOTE-REQ to every other process.
+	 */
+	private void sendVoteRequest(Transaction t, BeginProtocol action)
+	{
+		Collection<Integer> participants = getListOfAllProcesses(this.id);
+		
+		// Log START3PC. Under presumed abort it need not be forced: losing it
+		// loses only a transaction that is to abort anyway.
+		logDT(new Start3PC(action.transactionID, this.id, this.id, "", participants, action.playlistAction), !presumedAbort);
+		
+		// Place the VOTE-REQ to all other processes in the outgoing message queue.
+		broadcast(new Start3PC(action.transactionID, this.id, Action.BROADCAST, "", participants, action.playlistAction), participants);
+		
+		t.voteRequestedAt = System.nanoTime();
+		
+		// We are now waiting on responses form all processes.
+		t.waitingOn.addAll(getListOfAllProcesses(this.id));
+	}
+	
+	/**
+	 * This should only be called when the process this process believes to 
+	 * be coordinator is dead. Carry out the election protocol: send URELECTED
+	 * to the process with ID = UP % N, where N is the number of processes 
+	 * and UP is the UP set, represented as an Integer.
+	 */
+	private void electionProtocol(Transaction t)
+	{
+		Integer newCoordinator = coordinatorOf(t.UP);
+		this.metrics.increment(MetricsRegistry.ELECTIONS);
+		send(new YouAreElected(t.id, this.id, newCoordinator, t.playlistAction));
+		
+		// We are now waiting on this new coordinator.
+		t.waitingOn.clear();
+		t.waitingOn.add(newCoordinator);
+	}
+	
+	/**
+	 * Selects the election mode for all processes.
+	 * @param skipAhead	True to elect the lowest live process after a dead
+	 * 					coordinator, false to elect the next ID (the default).
+	 */
+	public static void setSkipAheadElection(boolean skipAhead)
+	{
+		skipAheadElection = skipAhead;
+	}
+	
+	public static boolean isSkipAheadElection()
+	{
+		return skipAheadElection;
+	}
+	
+	/**
+	 * Selects the DT logging mode for all processes.
+	 * @param presumed	True to write START3PC and ABORT records without
+	 * 					forcing them, false to force every record (the default).
+	 */
+	public static void setPresumedAbort(boolean presumed)
+	{
+		presumedAbort = presumed;
+	}
+	
+	public static boolean isPresumedAbort()
+	{
+		return presumedAbort;
+	}
+	
+	/**
+	 * The UP "set" after its coordinator (UP % N) has been found dead: UP + 1,
+	 * or with skip-ahead election the lowest value above UP whose process
+	 * is live. The processes skipped are ones the monitor already reports
+	 * dead, which is what each of their timeouts would have established one
+	 * after the other, so only one timeout is spent however many of them
+	 * there are. This process is live, so the search always ends.
+	 */
+	private Integer nextUP(Integer up)
+	{
+		Integer next = up + 1;
+		if (skipAheadElection)
+		{
+			Collection<Integer> live = this.monitor.getLive();
+			for (int i = 0; i < this.numProcesses; i++)
+			{
+				if (live.contains((next + i) % this.numProcesses))
+				{
+					return next + i;
+				}
+			}
+		}
+		return next;
+	}
+	
+	/**
+	 * The coordinator an UP "set" names. UP only grows, and wraps around the
+	 * process IDs, so it is not itself a process ID: compare IDs against this.
+	 */
+	private Integer coordinatorOf(Integer up)
+	{
+		return up % this.numProcesses;
+	}
+	
+	/**
+	 * The first UP "set" from up on that names the given process.
+	 */
+	private Integer upFor(Integer coordinator, Integer up)
+	{
+		return up + (coordinator - coordinatorOf(up) + this.numProcesses) % this.numProcesses;
+	}
+	
+	/**
+	 * Elects one new coordinator for all the given transactions, which were
+	 * all waiting on the same dead coordinator: one UP record in the DT log
+	 * and one YOU-ARE-ELECTED for all of them.
+	 * @param ts	Transactions to elect a coordinator for
+	 * @param newUp	Their new UP "set"
 	 */
-	private Transaction createTransaction(Integer transactionId, Role initialRole, State initialState, PlaylistAction playlistAction)
+	private void electionProtocol(List<Transaction> ts, Integer newUp)
 	{
-		Transaction t = new Transaction(transactionId, initialRole, initialState, playlistAction);
-		try
+		if (ts.size() == 1)
 		{
-			this.transactions.put(transactionId, t);
-			return t;
+			updateUPSet(ts.get(0), newUp);
+			electionProtocol(ts.get(0));
+			return;
 		}
-		catch (Exception ex)
+		
+		ArrayList<Integer> ids 					= new ArrayList<Integer>();
+		ArrayList<PlaylistAction> actions 		= new ArrayList<PlaylistAction>();
+		for (Transaction t : ts)
 		{
-			System.out.println("ERROR: while trying to create a new transaction.");
-			return t;
+			t.UP = newUp;
+			ids.add(t.id);
+			actions.add(t.playlistAction);
+		}
+		logDT(new BatchUP(this.id, ids, newUp));
+		
+		Integer newCoordinator = coordinatorOf(newUp);
+		this.metrics.increment(MetricsRegistry.ELECTIONS);
+		if (Log.enabled(Level.INFO))
+		{
+			Log.log(Level.INFO, this.id, "elects process " + newCoordinator + " for " + ids.size() + " transaction(s).");
+		}
+		send(new BatchYouAreElected(this.id, newCoordinator, ids, actions));
+		
+		// We are now waiting on this new coordinator.
+		for (Transaction t : ts)
+		{
+			t.waitingOn.clear();
+			t.waitingOn.add(newCoordinator);
 		}
 	}
 	
 	/**
-	 * Updates the state of an existing 3PC transaction.
-	 * @param id			id of process to update
-	 * @param initialState	new state, Aborted, Uncertain, Committable, Committed
+	 * This process has been elected coordinator of many transactions at
+	 * once. Takes over those it is still a participant of, with one UP
+	 * record in the DT log for those whose UP changes, and begins their
+	 * termination protocol together: one STATE-REQ per live process lists
+	 * all of them.
 	 */
-	private void updateState(Integer transactionId, State state)
+	private void handleBatchElection(BatchYouAreElected elected)
 	{
-		try
+		ArrayList<Transaction> won = new ArrayList<Transaction>();
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		Hashtable<Integer, ArrayList<Integer>> changed = new Hashtable<Integer, ArrayList<Integer>>();
+		for (int i = 0; i < elected.getTransactionIDs().size(); i++)
 		{
-			Transaction t = this.transactions.get(transactionId);
-			t.state = state;
+			Integer id = elected.getTransactionIDs().get(i);
+			Transaction t = this.transactions.get(id);
+			if (t == null)
+			{
+				t = createTransaction(id, Role.Participant, State.Aborted, elected.getPlaylistActions().get(i));
+			}
+			if (t.role == Role.Participant)
+			{
+				if (!coordinatorOf(t.UP).equals(this.id))
+				{
+					updateUPSet(changed, t, upFor(this.id, t.UP));
+				}
+				t.role = Role.Coordinator;
+				won.add(t);
+				ids.add(id);
+			}
 		}
-		catch (NullPointerException ex)
+		if (won.isEmpty())
 		{
-			System.out.println("ERROR: while updating state. This should never happen.");
+			return;
+		}
+		
+		logUPChanges(changed);
+		this.metrics.increment(MetricsRegistry.TERMINATION_RUNS);
+		
+		Collection<Integer> live 			= this.monitor.getLive();
+		ArrayList<PlaylistAction> actions 	= new ArrayList<PlaylistAction>();
+		for (Transaction t : won)
+		{
+			t.inTerminationProtocol 	= true;
+			t.terminationParticipants 	= new ArrayList<Integer>(live);
+			actions.add(t.playlistAction);
 		}
+		if (Log.enabled(Level.INFO))
+		{
+			Log.log(Level.INFO, this.id, "termination participants for " + ids.size() + " transaction(s): " + live);
+		}
+		broadcast(new BatchStateRequest(this.id, Action.BROADCAST, ids, actions), live);
 	}
 	
 	/**
-	 * Updates the role of this process in an existing 3PC transaction.
-	 * @param transactionId	id of process to update
-	 * @param role			new role, Participant or Coordinator
+	 * Responds to a batched STATE-REQ with this process' state in each of
+	 * its transactions, as respondToStateRequest would, in one reply. The UP
+	 * changes it implies are logged as one record, and a coordinator the
+	 * sender supersedes steps down to participant.
 	 */
-	private void updateRole(Integer transactionId, Role role)
+	private void respondToBatchStateRequest(BatchStateRequest request)
 	{
-		try
+		ArrayList<Integer> ids 	= new ArrayList<Integer>();
+		Hashtable<Integer, ArrayList<Integer>> changed = new Hashtable<Integer, ArrayList<Integer>>();
+		byte[] states 			= new byte[request.getTransactionIDs().size()];
+		int n = 0;
+		for (int i = 0; i < request.getTransactionIDs().size(); i++)
 		{
-			Transaction t = this.transactions.get(transactionId);
-			t.role = role;
+			Integer id = request.getTransactionIDs().get(i);
+			Transaction t = this.transactions.get(id);
+			if (t == null)
+			{
+				t = createTransaction(id, Role.Participant, State.Aborted, request.getPlaylistActions().get(i));
+			}
+			
+			// As for a single STATE-REQ: ignore coordinators older than our UP.
+			Integer coordinator = coordinatorOf(t.UP);
+			if (request.senderID < coordinator)
+			{
+				continue;
+			}
+			if (request.senderID > coordinator)
+			{
+				t.role 					= Role.Participant;
+				t.inTerminationProtocol = false;
+				updateUPSet(changed, t, upFor(request.senderID, t.UP));
+			}
+			ids.add(id);
+			if (t.committed)
+			{
+				states[n++] = BatchStateReply.COMMITTED;
+			}
+			else if (t.state == State.Aborted)
+			{
+				states[n++] = BatchStateReply.ABORTED;
+			}
+			else if (t.state == State.Committable)
+			{
+				states[n++] = BatchStateReply.COMMITTABLE;
+			}
+			else
+			{
+				states[n++] = BatchStateReply.UNCERTAIN;
+			}
 		}
-		catch (NullPointerException ex)
+		if (ids.isEmpty())
 		{
-			System.out.println("ERROR: while updating state. This should never happen.");
+			return;
 		}
+		logUPChanges(changed);
+		send(new BatchStateReply(this.id, request.senderID, ids, Arrays.copyOf(states, n)));
 	}
 	
 	/**
-	 * Changes the UP set. This writes to the DT log.
+	 * Changes the UP set of a transaction handled in a batch, noting the
+	 * change in changed (transaction IDs by new UP) for logUPChanges.
 	 */
-	private void updateUPSet(Transaction t, Integer newUp)
+	private void updateUPSet(Hashtable<Integer, ArrayList<Integer>> changed, Transaction t, Integer newUp)
 	{
 		t.UP = newUp;
-		this.dtLog.log(new UP(t.id, this.id, this.id, t.playlistAction, t.UP));
+		if (!changed.containsKey(newUp))
+		{
+			changed.put(newUp, new ArrayList<Integer>());
+		}
+		changed.get(newUp).add(t.id);
 	}
 	
 	/**
-	 * Returns a collection of all IDs in range (0, numProcesses).
-	 * @param exclude Process to exclude (used to exclude self)
+	 * Writes the UP changes of a batch to the DT log: one record per new UP
+	 * (usually just one), none if nothing changed.
 	 */
-	private Collection<Integer> getListOfAllProcesses(Integer exclude)
+	private void logUPChanges(Hashtable<Integer, ArrayList<Integer>> changed)
 	{
-		Collection<Integer> list = new LinkedList<Integer>();
-		for(int i = 0; i < this.numProcesses; i++)
+		for (Map.Entry<Integer, ArrayList<Integer>> change : changed.entrySet())
 		{
-			if (i != exclude)
-			{
-				list.add(i);
-			}
+			logDT(new BatchUP(this.id, change.getValue(), change.getKey()));
 		}
-		return list;
 	}
 	
-	/*
-	private void start3PC(Transaction t, BeginProtocol action)
+	/**
+	 * Handles each state in a batched STATE-REQ reply as the reply it stands
+	 * for. The decisions this leads to go out as one BatchDecision per
+	 * process rather than one COMMIT or ABORT per transaction.
+	 */
+	private void handleBatchStateReply(BatchStateReply reply)
 	{
-		Collection<Integer> participants = getListOfAllProcesses(this.id);
-		
-		// Controller has selected this process to be coordinator.
-		updateState(t.id, State.Aborted);
-		updateRole(t.id, Role.Coordinator);
-		
-		// Log START3PC.
-		this.dtLog.log(new Start3PC(action.transactionID, this.id, this.id, "", participants, action.playlistAction));
+		this.batchedCommits = new Hashtable<Integer, ArrayList<Integer>>();
+		this.batchedAborts 	= new Hashtable<Integer, ArrayList<Integer>>();
 		
-		// Send VOTE-REQ to all processes.		
-		for (int i = 0; i < this.numProcesses; i++)
+		byte[] states = reply.getStates();
+		for (int i = 0; i < states.length; i++)
 		{
-			if (i != this.id)
+			Integer id = reply.getTransactionIDs().get(i);
+			Transaction t = this.transactions.get(id);
+			if (t == null)
 			{
-				// MIKE: added this print out to show VOTE-REQs being sent out.
-				System.out.println(action.transactionID + ": Process " + this.id + " sends VOTE-REQ to Process " + i);
-				send(new Start3PC(action.transactionID, this.id, i, "", participants, action.playlistAction));
+				continue;
+			}
+			switch (states[i])
+			{
+				case BatchStateReply.COMMITTED:
+					handle(new Commit(id, reply.senderID, this.id, t.playlistAction));
+					break;
+				case BatchStateReply.ABORTED:
+					handle(new Abort(id, reply.senderID, this.id, t.playlistAction));
+					break;
+				case BatchStateReply.COMMITTABLE:
+					handle(new Committable(id, reply.senderID, this.id, t.playlistAction));
+					break;
+				default:
+					handle(new Uncertain(id, reply.senderID, this.id, t.playlistAction));
+					break;
 			}
 		}
 		
-		// We are now waiting on responses form all processes.
-		t.waitingOn.addAll(getListOfAllProcesses(this.id));
+		HashSet<Integer> destinations = new HashSet<Integer>(this.batchedCommits.keySet());
+		destinations.addAll(this.batchedAborts.keySet());
+		for (Integer p : destinations)
+		{
+			ArrayList<Integer> committed 	= this.batchedCommits.get(p);
+			ArrayList<Integer> aborted 		= this.batchedAborts.get(p);
+			send(new BatchDecision(this.id, p,
+					committed != null ? committed : new ArrayList<Integer>(),
+					aborted != null ? aborted : new ArrayList<Integer>()));
+		}
+		this.batchedCommits = null;
+		this.batchedAborts 	= null;
 	}
-	*/
 	
-	// TODO: Mike changed to this new method.
-	private void start3PC(Transaction t, BeginProtocol action)
+	/**
+	 * Adds a decision to the batch being collected for each of the processes.
+	 */
+	private void batchDecision(Hashtable<Integer, ArrayList<Integer>> batch, Integer transactionId, Collection<Integer> processes)
 	{
-		Collection<Integer> participants = getListOfAllProcesses(this.id);
-		
-		
-		// Update state of this process. We are coord and in state ABORTED 
-		// since we can ABORT unilaterally.
-		updateState(t.id, State.Aborted);
-		updateRole(t.id, Role.Coordinator);
-		
-		// Log START3PC.
-		this.dtLog.log(new Start3PC(action.transactionID, this.id, this.id, "", participants, action.playlistAction));
-		
-		// Place all VOTE-REQ messages in the outgoing message queue.
-		for (int i = 0; i < this.numProcesses; i++)
+		for (Integer p : processes)
 		{
-			if (i != this.id)
+			if (!batch.containsKey(p))
 			{
-				// MIKE: added this print out to show VOTE-REQs being sent out.
-				//System.out.println(action.transactionID + ": Process " + this.id + " added VOTE-REQ to Process " + i + " to outgoing message queue.");
-				
-				protocolSendQueue.add(new Start3PC(action.transactionID, this.id, i, "", participants, action.playlistAction));
-				//send(new Start3PC(action.transactionID, this.id, i, "", participants, action.playlistAction));
+				batch.put(p, new ArrayList<Integer>());
 			}
+			batch.get(p).add(transactionId);
 		}
-		
-		// We are now waiting on responses form all processes.
-		t.waitingOn.addAll(getListOfAllProcesses(this.id));
 	}
 	
 	/**
-	 * This should only be called when the process this process believes to 
-	 * be coordinator is dead. Carry out the election protocol: send URELECTED
-	 * to the process with ID = UP % N, where N is the number of processes 
-	 * and UP is the UP set, represented as an Integer.
+	 * This process has just become coordinator of the transaction: begin the
+	 * termination protocol with the processes that are live now.
 	 */
-	private void electionProtocol(Transaction t)
+	private void beginTermination(Transaction t)
 	{
-		Integer newCoordinator = t.UP % this.numProcesses;
-		send(new YouAreElected(t.id, this.id, newCoordinator, t.playlistAction));
-		
-		// We are now waiting on this new coordinator.
-		t.waitingOn.clear();
-		t.waitingOn.add(newCoordinator);
+		t.inTerminationProtocol 	= true;
+		t.terminationParticipants 	= this.monitor.getLive();
+		if (Log.enabled(Level.INFO, t.id))
+		{
+			Log.log(Level.INFO, this.id, t.id, "termination participants:", t.terminationParticipants.toString());
+		}
+		sendStateRequests(t);
 	}
 	
 	/**
@@ -1003,7 +2442,7 @@ public class Process3PC implements Runnable {
 		t.waitingOn.clear();
 		
 		updateState(t.id, State.Committable);
-		this.dtLog.log(action);
+		logDT(action);
 		send(new Ack(t.id, this.id, action.senderID, action.playlistAction));
 		
 		// We are now waiting on a COMMIT message from the coordinator.
@@ -1032,6 +2471,10 @@ public class Process3PC implements Runnable {
 	{
 		// We are no longer waiting on any participants.
 		transaction.waitingOn.clear();
+		if (transaction.voteRequestedAt != 0)
+		{
+			this.metrics.recordSince(MetricsRegistry.VOTE, transaction.voteRequestedAt);
+		}
 		
 		// If all participants voted YES, PRECOMMIT and send PRECOMMIT to all.
 		if (transaction.yesCount == this.numProcesses - 1)
@@ -1060,15 +2503,11 @@ public class Process3PC implements Runnable {
 	private void sendPrecommit(Transaction t, Collection<Integer> destinations)
 	{
 		updateState(t.id, State.Committable);
-		this.dtLog.log(new Precommit(t.id, this.id, this.id, "", t.playlistAction));
-		for (Iterator<Integer> i = destinations.iterator(); i.hasNext();)
-		{
-			Integer destination = i.next();
-			if (destination !=  this.id)
-			{
-				send(new Precommit(t.id, this.id, destination, "", t.playlistAction));
-			}
-		}
+		logDT(new Precommit(t.id, this.id, this.id, "", t.playlistAction));
+		t.precommitSentAt = System.nanoTime();
+		ArrayList<Integer> others = new ArrayList<Integer>(destinations);
+		others.remove(this.id);
+		broadcast(new Precommit(t.id, this.id, Action.BROADCAST, "", t.playlistAction), others);
 		t.expectedAcks = destinations.size();
 	}
 	
@@ -1083,20 +2522,128 @@ public class Process3PC implements Runnable {
 	 */
 	private void vote(Transaction t, Start3PC start3PC)
 	{ 
-		if (nextDecision == Decide.Yes)
+		Decide decision = nextDecision;
+		
+		// Default should be YES.
+		nextDecision = Decide.Yes;
+		
+		if (decision == Decide.Yes)
 		{
-			voteYes(start3PC);
+			if (!lockAndVote(t, start3PC))
+			{
+				this.metrics.increment(MetricsRegistry.LOCK_WAITS);
+				this.lockWaiters.add(start3PC);
+			}
 		}
-		else if (nextDecision == Decide.No)
+		else if (decision == Decide.No)
 		{
 			voteNo(t, start3PC);
+			
+			// We are now waiting on a response from the coordinator.
+			t.waitingOn.add(start3PC.senderID);
+		}
+	}
+	
+	/**
+	 * Votes YES if this process can lock every song the action touches. It
+	 * waits behind older transactions holding one of them, and votes NO if a
+	 * younger one does (see LockTable).
+	 * 
+	 * Once locked, the action is validated against the Playlist: every
+	 * older transaction on the same songs has been decided and applied by
+	 * then, so it is NO if the action would not apply cleanly, or if a song
+	 * it read has since been written (an optimistic transaction, see
+	 * PlaylistAction.expectVersion).
+	 * @return False if the vote now waits on locks.
+	 */
+	private boolean lockAndVote(Transaction t, Start3PC start3PC)
+	{
+		switch (this.locks.tryAcquire(t.id, start3PC.playlistAction.getKeys()))
+		{
+			case Wait:
+				return false;
+			case Refused:
+				this.metrics.increment(MetricsRegistry.LOCK_CONFLICTS);
+				if (Log.enabled(Level.INFO, t.id))
+				{
+					Log.log(Level.INFO, this.id, t.id, "votes NO: transaction " 
+							+ lockHolder(start3PC.playlistAction) + " holds a song it touches.", null);
+				}
+				voteNo(t, start3PC);
+				break;
+			default:
+				String conflict = this.playlistLog.snapshot().conflicts(start3PC.playlistAction);
+				if (conflict != null)
+				{
+					this.metrics.increment(MetricsRegistry.VALIDATION_FAILURES);
+					if (Log.enabled(Level.INFO, t.id))
+					{
+						Log.log(Level.INFO, this.id, t.id, "votes NO: " + conflict + ".", null);
+					}
+					voteNo(t, start3PC);
+				}
+				else
+				{
+					voteYes(start3PC);
+				}
+				break;
 		}
-		
-		// Default should be YES.
-		nextDecision = Decide.Yes;
 		
 		// We are now waiting on a response from the coordinator.
 		t.waitingOn.add(start3PC.senderID);
+		return true;
+	}
+	
+	/**
+	 * Retries, in arrival order, the transactions to coordinate and the
+	 * VOTE-REQs waiting on locks. A waiting VOTE-REQ already decided (its
+	 * coordinator gave up on it) is dropped, and one whose coordinator has
+	 * died is aborted: it never voted, so it may.
+	 */
+	private void grantLocks()
+	{
+		for (Iterator<BeginProtocol> i = this.beginWaiters.iterator(); i.hasNext();)
+		{
+			BeginProtocol action = i.next();
+			if (lockAndStart(this.transactions.get(action.transactionID), action))
+			{
+				i.remove();
+			}
+		}
+		for (Iterator<Start3PC> i = this.lockWaiters.iterator(); i.hasNext();)
+		{
+			Start3PC start3PC = i.next();
+			Transaction t = this.transactions.get(start3PC.transactionID);
+			if (t == null || t.committed || t.aborted || t.state != State.Aborted)
+			{
+				i.remove();
+			}
+			else if (!this.monitor.getLive().contains(start3PC.senderID))
+			{
+				i.remove();
+				abort(t);
+			}
+			else if (lockAndVote(t, start3PC))
+			{
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * @return ID of a transaction holding a lock the action needs, or null.
+	 */
+	private Integer lockHolder(PlaylistAction action)
+	{
+		for (String key : action.getKeys())
+		{
+			Integer holder = this.locks.holder(key);
+			if (holder != null)
+			{
+				return holder;
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -1106,13 +2653,11 @@ public class Process3PC implements Runnable {
 	private void voteYes(Start3PC start3PC)
 	{
 		// Write YES to DT log.
-		dtLog.log(new Yes(start3PC.transactionID, this.id, start3PC.senderID, "", start3PC.getParticipants(), start3PC.playlistAction));
+		logDT(new Yes(start3PC.transactionID, this.id, start3PC.senderID, "", start3PC.getParticipants(), start3PC.playlistAction));
 		
 		// Send YES to coordinator.
 		send(new Yes(start3PC.transactionID, this.id, start3PC.senderID, "", start3PC.getParticipants(), start3PC.playlistAction));
 		
-		System.out.println();
-		
 		// Now uncertain and awaiting coordinator.
 		updateState(start3PC.transactionID, State.Uncertain);
 	}
@@ -1138,6 +2683,10 @@ public class Process3PC implements Runnable {
 		//if (transaction.acks.size() == transaction.expectedAcks)
 		if (transaction.acks.size() >= (this.monitor.getNonFailedProcesses().size() - 1))
 		{
+			if (transaction.precommitSentAt != 0 && !transaction.committed)
+			{
+				this.metrics.recordSince(MetricsRegistry.PRECOMMIT, transaction.precommitSentAt);
+			}
 			commit(transaction);
 			sendCommit(transaction.id, getListOfAllProcesses(this.id), action.playlistAction);
 		}
@@ -1150,10 +2699,12 @@ public class Process3PC implements Runnable {
 	 */
 	private void sendCommit(Integer transactionId, Collection<Integer> processes, PlaylistAction action)
 	{
-		for(Iterator<Integer> i = processes.iterator(); i.hasNext();)
+		if (this.batchedCommits != null)
 		{
-			send(new Commit(transactionId, this.id, i.next(), action));	
+			batchDecision(this.batchedCommits, transactionId, processes);
+			return;
 		}
+		broadcast(new Commit(transactionId, this.id, Action.BROADCAST, action), processes);
 	}
 	
 	/**
@@ -1163,17 +2714,61 @@ public class Process3PC implements Runnable {
 	 */
 	private void sendAbort(Transaction t, Collection<Integer> processes)
 	{
-		for(Iterator<Integer> i = processes.iterator(); i.hasNext();)
+		if (this.batchedAborts != null)
+		{
+			batchDecision(this.batchedAborts, t.id, processes);
+			return;
+		}
+		broadcast(new Abort(t.id, this.id, Action.BROADCAST, t.playlistAction), processes);
+	}
+	
+	/**
+	 * Answers a batched DEC-REQ with one message listing the requested
+	 * transactions decided here. Undecided ones are left out, as with a
+	 * single DEC-REQ.
+	 */
+	private void respondToBatchDecisionRequest(BatchDecisionRequest request)
+	{
+		ArrayList<Integer> committed 	= new ArrayList<Integer>();
+		ArrayList<Integer> aborted 		= new ArrayList<Integer>();
+		for (Integer id : request.getTransactionIDs())
 		{
-			send(new Abort(t.id, this.id, i.next(), t.playlistAction));	
+			Transaction t = this.transactions.get(id);
+			if (t != null && t.committed)
+			{
+				committed.add(id);
+			}
+			else if (t != null && t.aborted)
+			{
+				aborted.add(id);
+			}
+		}
+		if (!committed.isEmpty() || !aborted.isEmpty())
+		{
+			send(new BatchDecision(this.id, request.senderID, committed, aborted));
 		}
 	}
 	
-	private void sendDecisionRequest(Transaction t, Collection<Integer> processes)
+	/**
+	 * Handles each decision in a batch as the COMMIT or ABORT it stands for.
+	 */
+	private void handleBatchDecision(BatchDecision decision)
 	{
-		for (Iterator<Integer> i = processes.iterator(); i.hasNext();)
+		for (Integer id : decision.getCommitted())
 		{
-			send(new DecisionRequest(t.id, this.id, i.next(), t.playlistAction));
+			Transaction t = this.transactions.get(id);
+			if (t != null)
+			{
+				handle(new Commit(id, decision.senderID, this.id, t.playlistAction));
+			}
+		}
+		for (Integer id : decision.getAborted())
+		{
+			Transaction t = this.transactions.get(id);
+			if (t != null)
+			{
+				handle(new Abort(id, decision.senderID, this.id, t.playlistAction));
+			}
 		}
 	}
 	
@@ -1184,13 +2779,10 @@ public class Process3PC implements Runnable {
 	 */
 	private void sendStateRequest(Integer transactionId, Collection<Integer> processes)
 	{
-		for(Iterator<Integer> i = processes.iterator(); i.hasNext();)
-		{
-			// MIKE: PlaylistAction is null on a state request -- we have just
-			// recovered and are asking others for help, they can tell us
-			// the PlaylistAction.
-			send(new StateRequest(transactionId, this.id, i.next(), null));	
-		}
+		// MIKE: PlaylistAction is null on a state request -- we have just
+		// recovered and are asking others for help, they can tell us
+		// the PlaylistAction.
+		broadcast(new StateRequest(transactionId, this.id, Action.BROADCAST, null), processes);
 	}
 	
 	/**
@@ -1199,11 +2791,7 @@ public class Process3PC implements Runnable {
 	 */
 	private void sendStateRequests(Transaction t)
 	{
-		Collection<Integer> live = this.monitor.getLive();
-		for (Iterator<Integer> i = live.iterator(); i.hasNext();)
-		{
-			send(new StateRequest(t.id, this.id, i.next(), t.playlistAction));
-		}
+		broadcast(new StateRequest(t.id, this.id, Action.BROADCAST, t.playlistAction), this.monitor.getLive());
 	}
 	
 	/**
@@ -1256,32 +2844,73 @@ public class Process3PC implements Runnable {
 	 */
 	private void commit(Transaction t)
 	{
-		if (!t.committed)
+		if (!t.committed && t.playlistAction == null)
+		{
+			// A COMMIT for a transaction this process never saw the action
+			// of: the sender knows it only from an installed snapshot. There
+			// is nothing to log or apply; its effects arrive here the same
+			// way, by snapshot.
+			t.committed = true;
+			updateState(t.id, State.Committed);
+			t.waitingOn.clear();
+		}
+		else if (!t.committed)
 		{
 			t.committed = true;
-			dtLog.log(new Commit(t.id, this.id, this.id, t.playlistAction));
+			logDT(new Commit(t.id, this.id, this.id, t.playlistAction));
 			
 			
 			// MIKE: start: write the edit/delete/add to the Playlist stable storage.
 			ArrayList<String> testCmd = t.playlistAction.getCommand();
 			
-			try {
-				this.playlistLog.log(testCmd, t.id);
-			}
-			catch (Exception e) 
+			if (Log.enabled(Level.DEBUG, t.id))
 			{
-				e.printStackTrace();
+				Log.log(Level.DEBUG, this.id, t.id, "logging new Playlist to disk.", null);
 			}
+			t.applySequence = this.applyStage.submit(testCmd, t.id);
 			// MIKE: end: write the edit/delete/add to the Playlist stable storage.
+			
+			if (t.role == Role.Coordinator && t.beganAt != 0)
+			{
+				this.metrics.recordSince(MetricsRegistry.COMMIT, t.beganAt);
+			}
 				
-			System.out.println(t.id + ": COMMIT by process " + this.id);
+			if (Log.enabled(Level.INFO, t.id))
+			{
+				Log.log(Level.INFO, this.id, t.id, "decides COMMIT.", null);
+			}
 			updateState(t.id, State.Committed);
 			
-			// We are no longer waiting on anyone. We're done.
+			// We are no longer waiting on anyone. We're done. Our locks
+			// go once the commit is applied.
 			t.waitingOn.clear();
+			this.unapplied.add(t);
+			releaseApplied();
+		}
+	}
+	
+	/**
+	 * Releases the locks of committed transactions the apply stage has
+	 * applied, so that a VOTE-REQ waiting on them is validated against a
+	 * Playlist that includes them.
+	 */
+	private void releaseApplied()
+	{
+		while (!this.unapplied.isEmpty() && this.unapplied.peek().applySequence <= this.applyStage.appliedThrough())
+		{
+			this.locks.release(this.unapplied.poll().id);
 		}
 	}
 	
+	/**
+	 * @return True if the transaction has committed and its action has been
+	 * 		   applied to the Playlist here.
+	 */
+	private boolean applied(Transaction t)
+	{
+		return t.committed && t.applySequence <= this.applyStage.appliedThrough();
+	}
+	
 	/**
 	 * Decides ABORT: writes to DT log and changes state.
 	 * @param transactionId Transaction being aborted.
@@ -1291,12 +2920,19 @@ public class Process3PC implements Runnable {
 		if (!t.aborted)
 		{
 			t.aborted = true;
-			dtLog.log(new Abort(t.id, this.id, this.id, t.playlistAction));
-			System.out.println(t.id + ": ABORT by process " + this.id);
+			
+			// Under presumed abort, a lost ABORT record leaves a transaction
+			// that recovery either presumes aborted or asks the others about.
+			logDT(new Abort(t.id, this.id, this.id, t.playlistAction), !presumedAbort);
+			if (Log.enabled(Level.INFO, t.id))
+			{
+				Log.log(Level.INFO, this.id, t.id, "decides ABORT.", null);
+			}
 			updateState(t.id, State.Aborted);
 			
 			// We are no longer waiting on anyone. We're done.
 			t.waitingOn.clear();
+			this.locks.release(t.id);
 		}
 	}
 	
@@ -1306,7 +2942,7 @@ public class Process3PC implements Runnable {
 	 */
 	public void printPlaylist()
 	{
-		Playlist playlist = this.playlistLog.read();
+		PlaylistSnapshot playlist = this.playlistLog.snapshot();
 		System.out.println("process " + id + "'s Playlist:");
 		playlist.printPlaylist();
 	}
@@ -3,7 +3,10 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import action.KeepAlive;
+import framework.Clock;
 import framework.NetController;
+import logging.Level;
+import logging.Log;
 
 /**
  * Abstraction for monitoring the life of other processes in a 
@@ -49,6 +52,9 @@ public class ProcessMonitor {
 	// System time when this monitor last sent Keep-Alive messages.
 	private ArrayList<Long> lastSent;
 	
+	// Source of time for Keep-Alive intervals and timeouts.
+	private Clock clock;
+	
 	/**
 	 * 
 	 * @param network	network to communicate with other processes
@@ -59,6 +65,14 @@ public class ProcessMonitor {
 	 * 					than every interval milliseconds
 	 */
 	public ProcessMonitor(Integer processId, Integer numProcesses, NetController network, long timeout, long interval)
+	{
+		this(processId, numProcesses, network, timeout, interval, Clock.SYSTEM);
+	}
+	
+	/**
+	 * @param clock		source of time for intervals and timeouts
+	 */
+	public ProcessMonitor(Integer processId, Integer numProcesses, NetController network, long timeout, long interval, Clock clock)
 	{
 		// Initialize all fields.
 		this.processId 		= processId;
@@ -66,9 +80,10 @@ public class ProcessMonitor {
 		this.network 		= network;
 		this.timeout 		= timeout;
 		this.interval 		= interval;
+		this.clock 			= clock;
 		this.lastSent 		= new ArrayList<Long>();
 		this.statuses 		= new ArrayList<ProcessStatus>();
-		Long time = System.currentTimeMillis();
+		Long time = this.clock.currentTimeMillis();
 		for(int i = 0; i < this.numProcesses; i++)
 		{
 			this.statuses.add(new ProcessStatus(true, time));
@@ -115,30 +130,31 @@ public class ProcessMonitor {
 		{
 			KeepAlive ka = i.next();
 			ProcessStatus senderStatus = this.statuses.get(ka.senderID);
-			if (senderStatus.live == false)
+			if (senderStatus.live == false && Log.enabled(Level.INFO))
 			{
-				System.out.println("Process " + this.processId + " believes process " + ka.senderID + " just came back to life.");
+				Log.log(Level.INFO, this.processId, "believes process " + ka.senderID + " just came back to life.");
 			}
 			senderStatus.live = true;
-			senderStatus.lastReceived = System.currentTimeMillis();
+			senderStatus.lastReceived = this.clock.currentTimeMillis();
 			i.remove();
 		}
 		
 		// Send Keep-Alive (if applicable) and update status for every process.
 		for(int i = 0; i < numProcesses; i++)
 		{
-			if (System.currentTimeMillis() - lastSent.get(i) > this.interval)
+			if (this.clock.currentTimeMillis() - lastSent.get(i) > this.interval)
 			{
 				// MIKE: For keep alive messages, the PlaylistAction is not required, set it to
 				// null.
 				this.network.sendMsg(i, new KeepAlive(0, this.processId, i, null));
+				lastSent.set(i, this.clock.currentTimeMillis());
 			}
 			
-			if (System.currentTimeMillis() - this.statuses.get(i).lastReceived > this.timeout)
+			if (this.clock.currentTimeMillis() - this.statuses.get(i).lastReceived > this.timeout)
 			{
-				if (this.statuses.get(i).live)
+				if (this.statuses.get(i).live && Log.enabled(Level.INFO))
 				{
-					System.out.println("Process " + this.processId + " believes process " + i + " is dead.");
+					Log.log(Level.INFO, this.processId, "believes process " + i + " is dead.");
 				}
 				this.statuses.get(i).live = false;
 				
@@ -0,0 +1,583 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+
+import framework.Clock;
+import framework.Config;
+import framework.NetController;
+import framework.SimulatedNetwork;
+import log.Storage;
+import logging.Level;
+import logging.Log;
+import metrics.MetricsRegistry;
+import playlist.PlaylistAction;
+import playlist.ReadResult;
+
+/**
+ * Deterministic discrete-event simulator for the 3PC protocol.
+ *
+ * All processes run on a single thread and a virtual clock. Messages travel
+ * through a SimulatedNetwork with seeded random delays and drops, and crashes
+ * simply stop a process from being stepped (no Thread.stop()). Two runs with
+ * the same seed and the same commands are identical, and "s 3" costs only as
+ * long as it takes to simulate three seconds, not three seconds.
+ *
+ * Accepts the same script format as Launcher, plus:
+ *
+ * delay <min> <max>   - Every message takes min..max virtual milliseconds.
+ * drop <probability>  - Every message is lost with the given probability.
+ * load <n> [window]   - Runs n Adds through process 0, at most window at a
+ *                       time, and reports throughput and commit latency.
+ * quiet <on|off>      - Silences the processes' own console output.
+ * log <level> [txn]   - As in Launcher.
+ * storage <engine> [i ...] - As in Launcher, but memory (which keeps runs off
+ *                       the disk) is the default.
+ *
+ * Usage: java Simulator [seed] [script ...]  (reads commands from stdin
+ * if no script is given).
+ */
+public class Simulator {
+
+	/**
+	 * Virtual time, advanced only by the Simulator.
+	 */
+	private static class VirtualClock implements Clock
+	{
+		private long now = 0;
+
+		public long currentTimeMillis()
+		{
+			return now;
+		}
+	}
+
+	// Configure commands (shared with Launcher).
+	private static final String ADD_CMD = "add";
+	private static final String REMOVE_CMD = "remove";
+	private static final String EDIT_CMD = "edit";
+	private static final String CREATE_PROCESSES_CMD = "cp";
+	private static final String KILL_CMD = "kill";
+	private static final String KILL_ALL_CMD = "killAll";
+	private static final String REVIVE_CMD = "revive";
+	private static final String REVIVE_ALL_CMD = "reviveAll";
+	private static final String PARTIAL_MESSAGE_CMD = "pm";
+	private static final String RESUME_MESSAGES_CMD = "rm";
+	private static final String REJECT_NEXT_CHANGE_CMD = "rejectNextChange";
+	private static final String EXIT_CMD = "e";
+	private static final String SLEEP_CMD = "s";
+	private static final String USE_SCRIPT = "script";
+	private static final String PRINT_PLAYLISTS_CMD = "p";
+	private static final String PRINT_DT_LOGS_CMD = "pl";
+	private static final String METRICS_CMD = "metrics";
+	private static final String READ_CMD = "read";
+	private static final String CONSISTENT_READ_CMD = "readc";
+	private static final String CATCH_UP_CMD = "catchup";
+
+	// Simulator-only commands.
+	private static final String DELAY_CMD = "delay";
+	private static final String DROP_CMD = "drop";
+	private static final String LOAD_CMD = "load";
+	private static final String QUIET_CMD = "quiet";
+	private static final String LOG_CMD = "log";
+	private static final String ELECTION_CMD = "election";
+	private static final String PRESUMED_ABORT_CMD = "presumedabort";
+	private static final String STORAGE_CMD = "storage";
+
+	// Virtual time between two passes over all processes when no message
+	// is due sooner.
+	private static final long TICK_MILLIS = 10;
+
+	// A load transaction that has not committed everywhere after this much
+	// virtual time is counted as incomplete.
+	private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+	private final VirtualClock clock;
+	private final Random random;
+	private SimulatedNetwork network;
+
+	private int numProcesses;
+	private ArrayList<Process3PC> processes;
+	private ArrayList<NetController> netControllers;
+	private boolean[] alive;
+	private Integer nextTransID = 0;
+
+	// Storage engine (see log.Storage) to give processes when they are
+	// created, and overrides for particular processes. Simulations keep
+	// their logs in memory unless told otherwise.
+	private String storage = "memory";
+	private HashMap<Integer, String> processStorage = new HashMap<Integer, String>();
+
+	// Network settings to apply when processes are created.
+	private long minDelay = 1;
+	private long maxDelay = 5;
+	private double dropRate = 0.0;
+
+	// Console for the Simulator's own output, and a sink for the processes'.
+	// While quiet, the log level to go back to (null when not quiet).
+	private final PrintStream console;
+	private final PrintStream silent;
+	private Level loudLevel = null;
+
+	public Simulator(long seed)
+	{
+		this.clock 			= new VirtualClock();
+		this.random 		= new Random(seed);
+		this.processes 		= new ArrayList<Process3PC>();
+		this.netControllers = new ArrayList<NetController>();
+		this.console 		= System.out;
+		this.silent 		= new PrintStream(OutputStream.nullOutputStream());
+		
+		// Log events must come out in simulation order, and commits must be
+		// applied at the step that decides them.
+		Log.setAsync(false);
+		Process3PC.setAsyncApply(false);
+	}
+
+	public static void main(String args[]) throws Exception
+	{
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 0;
+		Simulator sim = new Simulator(seed);
+
+		if (args.length > 1)
+		{
+			for (int i = 1; i < args.length; i++)
+			{
+				sim.runScript(args[i]);
+			}
+			return;
+		}
+
+		System.out.println("Input commands to control the simulation (seed " + seed + "):");
+		Scanner scanner = new Scanner(System.in);
+		while (scanner.hasNextLine())
+		{
+			String[] tokens = scanner.nextLine().split(" ");
+			if (!sim.execute(tokens[0], Arrays.copyOfRange(tokens, 1, tokens.length)))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Executes one command.
+	 * @return false if the simulation should end.
+	 */
+	public boolean execute(String command, String[] parameters)
+	{
+		if (command.equals(ADD_CMD))
+		{
+			submit(new PlaylistAction(new ArrayList<String>(Arrays.asList("Add", parameters[0], parameters[1]))));
+		}
+		else if (command.equals(REMOVE_CMD))
+		{
+			submit(new PlaylistAction(new ArrayList<String>(Arrays.asList("Delete", parameters[0]))));
+		}
+		else if (command.equals(EDIT_CMD))
+		{
+			submit(new PlaylistAction(new ArrayList<String>(Arrays.asList("Edit", parameters[0], parameters[1], parameters[2]))));
+		}
+		else if (command.equals(CREATE_PROCESSES_CMD))
+		{
+			createProcesses(Integer.valueOf(parameters[0]));
+		}
+		else if (command.equals(KILL_CMD))
+		{
+			kill(Integer.valueOf(parameters[0]));
+		}
+		else if (command.equals(KILL_ALL_CMD))
+		{
+			for (int i = 0; i < this.numProcesses; i++)
+			{
+				kill(i);
+			}
+		}
+		else if (command.equals(REVIVE_CMD))
+		{
+			revive(Integer.valueOf(parameters[0]));
+		}
+		else if (command.equals(REVIVE_ALL_CMD))
+		{
+			for (int i = 0; i < this.numProcesses; i++)
+			{
+				revive(i);
+			}
+		}
+		else if (command.equals(PARTIAL_MESSAGE_CMD))
+		{
+			this.processes.get(Integer.valueOf(parameters[0])).haltAfter(Integer.valueOf(parameters[1]));
+		}
+		else if (command.equals(RESUME_MESSAGES_CMD))
+		{
+			this.processes.get(Integer.valueOf(parameters[0])).resumeMessages();
+		}
+		else if (command.equals(REJECT_NEXT_CHANGE_CMD))
+		{
+			this.processes.get(Integer.valueOf(parameters[0])).nextDecision(false);
+		}
+		else if (command.equals(SLEEP_CMD))
+		{
+			advance(Long.parseLong(parameters[0]) * 1000);
+		}
+		else if (command.equals(USE_SCRIPT))
+		{
+			runScript(parameters[0]);
+		}
+		else if (command.equals(PRINT_PLAYLISTS_CMD))
+		{
+			PrintStream out = System.out;
+			System.setOut(this.console);
+			for (Process3PC p : this.processes)
+			{
+				p.printPlaylist();
+			}
+			System.setOut(out);
+		}
+		else if (command.equals(PRINT_DT_LOGS_CMD))
+		{
+			PrintStream out = System.out;
+			System.setOut(this.console);
+			for (Process3PC p : this.processes)
+			{
+				p.printDTLog();
+			}
+			System.setOut(out);
+		}
+		else if (command.equals(READ_CMD))
+		{
+			this.console.println(this.processes.get(Integer.parseInt(parameters[0])).readLocal(parameters[1]));
+		}
+		else if (command.equals(CATCH_UP_CMD))
+		{
+			this.processes.get(Integer.parseInt(parameters[0])).catchUp();
+		}
+		else if (command.equals(CONSISTENT_READ_CMD))
+		{
+			consistentRead(Integer.parseInt(parameters[0]), parameters[1]);
+		}
+		else if (command.equals(METRICS_CMD))
+		{
+			for (MetricsRegistry registry : MetricsRegistry.all().values())
+			{
+				this.console.println(registry.dump());
+			}
+		}
+		else if (command.equals(DELAY_CMD))
+		{
+			this.minDelay = Long.parseLong(parameters[0]);
+			this.maxDelay = Long.parseLong(parameters[1]);
+			if (this.network != null)
+			{
+				this.network.setDelay(this.minDelay, this.maxDelay);
+			}
+		}
+		else if (command.equals(DROP_CMD))
+		{
+			this.dropRate = Double.parseDouble(parameters[0]);
+			if (this.network != null)
+			{
+				this.network.setDropRate(this.dropRate);
+			}
+		}
+		else if (command.equals(LOAD_CMD))
+		{
+			int window = parameters.length > 1 ? Integer.parseInt(parameters[1]) : 1;
+			load(Integer.parseInt(parameters[0]), window);
+		}
+		else if (command.equals(LOG_CMD))
+		{
+			Log.setLevel(Level.parse(parameters[0]));
+			if (parameters.length > 1)
+			{
+				Log.trace(Integer.parseInt(parameters[1]));
+			}
+		}
+		else if (command.equals(ELECTION_CMD))
+		{
+			Process3PC.setSkipAheadElection(parameters[0].equals("skip"));
+		}
+		else if (command.equals(PRESUMED_ABORT_CMD))
+		{
+			Process3PC.setPresumedAbort(parameters[0].equals("on"));
+		}
+		else if (command.equals(STORAGE_CMD))
+		{
+			Storage.forName(parameters[0]);
+			if (parameters.length == 1)
+			{
+				this.storage = parameters[0];
+				this.processStorage.clear();
+			}
+			for (int i = 1; i < parameters.length; i++)
+			{
+				this.processStorage.put(Integer.parseInt(parameters[i]), parameters[0]);
+			}
+		}
+		else if (command.equals(QUIET_CMD))
+		{
+			quiet(parameters[0].equals("on"));
+		}
+		else if (command.equals(EXIT_CMD))
+		{
+			return false;
+		}
+		else
+		{
+			this.console.println("Unrecognized command: " + command);
+		}
+		return true;
+	}
+
+	private void runScript(String filename)
+	{
+		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith("/") || line.equals("")) {
+					continue;
+				}
+
+				String[] tokens = line.split(" ");
+				if (!execute(tokens[0], Arrays.copyOfRange(tokens, 1, tokens.length))) {
+					return;
+				}
+			}
+		} catch (Exception exc) {
+			this.console.println("Error while running script.");
+			exc.printStackTrace();
+		}
+	}
+
+	private void createProcesses(int numProcesses)
+	{
+		this.numProcesses 	= numProcesses;
+		this.alive 			= new boolean[numProcesses];
+		this.network 		= new SimulatedNetwork(numProcesses, this.clock, this.random);
+		this.network.setDelay(this.minDelay, this.maxDelay);
+		this.network.setDropRate(this.dropRate);
+
+		for (int i = 0; i < numProcesses; i++)
+		{
+			Config config 		= new Config();
+			config.numProcesses = numProcesses;
+			config.procNum 		= i;
+			config.storage 		= this.processStorage.getOrDefault(i, this.storage);
+			NetController nc 	= new NetController(config, this.network.connect(i));
+
+			this.netControllers.add(nc);
+			this.processes.add(new Process3PC(i, nc, numProcesses, true, this.clock));
+			this.alive[i] = true;
+		}
+	}
+
+	private void kill(int id)
+	{
+		this.alive[id] = false;
+		this.console.println("[" + this.clock.now + " ms] SIMULATOR: killed process " + id);
+	}
+
+	private void revive(int id)
+	{
+		// As in Launcher, the revived process reuses the old NetController.
+		this.processes.set(id, new Process3PC(id, this.netControllers.get(id), this.numProcesses, false, this.clock));
+		this.alive[id] = true;
+		this.console.println("[" + this.clock.now + " ms] SIMULATOR: revived process " + id);
+	}
+
+	/**
+	 * Submits a client change to process 0, reporting a refusal.
+	 */
+	private void submit(PlaylistAction action)
+	{
+		if (start(action) == null)
+		{
+			this.console.println("[" + this.clock.now + " ms] SIMULATOR: process 0 is busy; change refused");
+		}
+	}
+
+	/**
+	 * Submits a change to process 0.
+	 * @return its transaction ID, or null if process 0 refused it for now.
+	 */
+	private Integer start(PlaylistAction action)
+	{
+		if (!this.processes.get(0).tryStart(this.nextTransID, action))
+		{
+			return null;
+		}
+		return this.nextTransID++;
+	}
+
+	/**
+	 * Runs the simulation until the consistent read completes (or times out).
+	 */
+	private void consistentRead(int process, String songName)
+	{
+		if (!this.alive[process])
+		{
+			this.console.println("Process " + process + " is dead.");
+			return;
+		}
+		long start = this.clock.now;
+		CompletableFuture<ReadResult> result = this.processes.get(process).readConsistent(songName);
+		while (!result.isDone())
+		{
+			advance(1);
+		}
+		try
+		{
+			this.console.println(result.get() + " after " + (this.clock.now - start) + " ms");
+		}
+		catch (Exception e)
+		{
+			this.console.println("Read failed: " + e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Silences the processes' output. Nothing they would log can be seen
+	 * then, so logging is turned off as well rather than formatted for the
+	 * sink.
+	 */
+	private void quiet(boolean on)
+	{
+		if (on && this.loudLevel == null)
+		{
+			this.loudLevel = Log.getLevel();
+			Log.setLevel(Level.OFF);
+		}
+		else if (!on && this.loudLevel != null)
+		{
+			Log.setLevel(this.loudLevel);
+			this.loudLevel = null;
+		}
+		System.setOut(on ? this.silent : this.console);
+	}
+
+	/**
+	 * Runs the simulation for the given amount of virtual time.
+	 */
+	private void advance(long millis)
+	{
+		long until = this.clock.now + millis;
+		while (this.clock.now < until)
+		{
+			stepAll();
+			long next = Math.min(this.clock.now + TICK_MILLIS, this.network.nextDeliveryTime());
+			this.clock.now = Math.min(until, Math.max(this.clock.now + 1, next));
+		}
+	}
+
+	/**
+	 * Delivers due messages and steps every live process once, in ID order.
+	 */
+	private void stepAll()
+	{
+		this.network.deliver();
+		for (int i = 0; i < this.numProcesses; i++)
+		{
+			if (this.alive[i])
+			{
+				this.processes.get(i).step();
+			}
+		}
+	}
+
+	/**
+	 * Drives count Adds through process 0 with at most window in flight, then
+	 * reports throughput (per wall-clock and virtual time) and the virtual
+	 * latency from start until every live process has decided COMMIT.
+	 */
+	private void load(int count, int window)
+	{
+		Map<Integer, Long> inFlight = new LinkedHashMap<Integer, Long>();
+		ArrayList<Long> latencies = new ArrayList<Long>(count);
+		int issued = 0;
+		int incomplete = 0;
+		int refused = 0;
+		long virtualStart = this.clock.now;
+		long wallStart = System.nanoTime();
+
+		while (issued < count || !inFlight.isEmpty())
+		{
+			while (issued < count && inFlight.size() < window)
+			{
+				ArrayList<String> cmd = new ArrayList<String>();
+				cmd.add("Add");
+				cmd.add("load_" + this.nextTransID);
+				cmd.add("sim/" + this.nextTransID);
+				Integer transID = start(new PlaylistAction(cmd));
+				if (transID == null)
+				{
+					// Process 0 is pushing back; retry once time has passed.
+					refused++;
+					break;
+				}
+				inFlight.put(transID, this.clock.now);
+				issued++;
+			}
+
+			advance(1);
+
+			for (Iterator<Map.Entry<Integer, Long>> i = inFlight.entrySet().iterator(); i.hasNext();)
+			{
+				Map.Entry<Integer, Long> entry = i.next();
+				if (committedEverywhere(entry.getKey()))
+				{
+					latencies.add(this.clock.now - entry.getValue());
+					i.remove();
+				}
+				else if (this.clock.now - entry.getValue() > LOAD_TIMEOUT_MILLIS)
+				{
+					incomplete++;
+					i.remove();
+				}
+			}
+		}
+
+		long wallMillis = Math.max(1, (System.nanoTime() - wallStart) / 1000000);
+		long virtualMillis = Math.max(1, this.clock.now - virtualStart);
+		Collections.sort(latencies);
+
+		this.console.println("--------------------------------------------------------------------------------");
+		this.console.println("Load: " + count + " transaction(s), window " + window);
+		this.console.println("Committed: " + latencies.size() + ", incomplete: " + incomplete + ", refused (retried): " + refused);
+		this.console.println("Wall time: " + wallMillis + " ms (" + (latencies.size() * 60000L / wallMillis) + " commits/minute)");
+		this.console.println("Virtual time: " + virtualMillis + " ms (" + (latencies.size() * 1000L / virtualMillis) + " commits/second)");
+		if (!latencies.isEmpty())
+		{
+			this.console.println("Commit latency (virtual ms): p50=" + percentile(latencies, 0.50)
+					+ " p99=" + percentile(latencies, 0.99) + " max=" + latencies.get(latencies.size() - 1));
+		}
+		this.console.println("Messages sent: " + this.network.getSent() + ", dropped: " + this.network.getDropped());
+		this.console.println("--------------------------------------------------------------------------------\n");
+	}
+
+	private boolean committedEverywhere(Integer transID)
+	{
+		for (int i = 0; i < this.numProcesses; i++)
+		{
+			if (this.alive[i] && !this.processes.get(i).hasCommitted(transID))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long percentile(ArrayList<Long> sorted, double p)
+	{
+		return sorted.get(Math.min(sorted.size() - 1, (int)(p * sorted.size())));
+	}
+}
@@ -4,7 +4,7 @@ import java.io.Serializable;
 
 import playlist.PlaylistAction;
 
-public class Action implements Serializable {
+public class Action implements Serializable, Cloneable {
 
 	@Override
 	public String toString() {
@@ -14,6 +14,10 @@ public class Action implements Serializable {
 
 
 	private static final long serialVersionUID = 1L;
+	
+	// destinationID of an action sent to several processes at once (the
+	// transport may fill in the actual receiver).
+	public static final int BROADCAST = -1;
 
 	// Who is sending this action.
 	public int senderID;
@@ -31,6 +35,13 @@ public class Action implements Serializable {
 	// of the protocol.
 	public PlaylistAction playlistAction;
 	
+	// Trace context, set only while tracing is on (see tracing.Tracer):
+	// the trace of the transaction, the span in which this action was sent
+	// (until it is sent: the span that queued it), and when it was sent.
+	public long traceId;
+	public long spanId;
+	public long sentAt;
+	
 	
 	public Action(Integer transactionID, Integer senderID, Integer destinationID, PlaylistAction playlistAction)
 	{
@@ -39,4 +50,32 @@ public class Action implements Serializable {
 		this.destinationID = destinationID;
 		this.playlistAction = playlistAction;
 	}
+	
+	/**
+	 * @return a shallow copy of this action addressed to the given process,
+	 * 		   for transports that hand actions over without serializing them,
+	 * 		   so that no two receivers (nor the sender) share one instance.
+	 */
+	public Action copyTo(int destination)
+	{
+		try
+		{
+			Action copy = (Action)super.clone();
+			copy.destinationID = destination;
+			return copy;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * @return True if this is control traffic (e.g. heartbeats), which
+	 * 		   transports carry on their own lane ahead of protocol traffic.
+	 */
+	public boolean isControl()
+	{
+		return false;
+	}
 }
@@ -0,0 +1,41 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Reply to a BatchDecisionRequest: the requested transactions the sender
+ * has decided, split into COMMIT and ABORT. Transactions the sender is
+ * undecided about are left out.
+ */
+public class BatchDecision extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Integer> committed;
+	private ArrayList<Integer> aborted;
+
+	public BatchDecision(Integer senderID, Integer destinationID, Collection<Integer> committed, Collection<Integer> aborted)
+	{
+		super(-1, senderID, destinationID, null);
+		this.committed = new ArrayList<Integer>(committed);
+		this.aborted = new ArrayList<Integer>(aborted);
+	}
+	
+	public Collection<Integer> getCommitted()
+	{
+		return this.committed;
+	}
+	
+	public Collection<Integer> getAborted()
+	{
+		return this.aborted;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchDecision [committed=" + committed + ", aborted=" + aborted + ", senderID=" + senderID
+				+ ", destinationID=" + destinationID + "]";
+	}
+}
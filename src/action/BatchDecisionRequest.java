@@ -0,0 +1,34 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A DEC-REQ for many transactions at once, sent by a recovered process
+ * that is undecided about several transactions. Not part of any single
+ * transaction, so its transaction ID is -1.
+ */
+public class BatchDecisionRequest extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Integer> transactionIDs;
+
+	public BatchDecisionRequest(Integer senderID, Integer destinationID, Collection<Integer> transactionIDs)
+	{
+		super(-1, senderID, destinationID, null);
+		this.transactionIDs = new ArrayList<Integer>(transactionIDs);
+	}
+	
+	public Collection<Integer> getTransactionIDs()
+	{
+		return this.transactionIDs;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchDecisionRequest [transactionIDs=" + transactionIDs + ", senderID=" + senderID
+				+ ", destinationID=" + destinationID + "]";
+	}
+}
@@ -0,0 +1,46 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Reply to a BatchStateRequest: the sender's state in each requested
+ * transaction, as one byte per transaction (in the same order) standing for
+ * the COMMIT, ABORT, COMMITTABLE or UNCERTAIN reply to a single STATE-REQ.
+ */
+public class BatchStateReply extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	public static final byte COMMITTED 		= 'C';
+	public static final byte ABORTED 		= 'A';
+	public static final byte COMMITTABLE 	= 'P';
+	public static final byte UNCERTAIN 		= 'U';
+
+	private ArrayList<Integer> transactionIDs;
+	private byte[] states;
+
+	public BatchStateReply(Integer senderID, Integer destinationID, Collection<Integer> transactionIDs, byte[] states)
+	{
+		super(-1, senderID, destinationID, null);
+		this.transactionIDs = new ArrayList<Integer>(transactionIDs);
+		this.states = states;
+	}
+	
+	public ArrayList<Integer> getTransactionIDs()
+	{
+		return this.transactionIDs;
+	}
+	
+	public byte[] getStates()
+	{
+		return this.states;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchStateReply [transactionIDs=" + transactionIDs + ", states=" + new String(states)
+				+ ", senderID=" + senderID + ", destinationID=" + destinationID + "]";
+	}
+}
@@ -0,0 +1,41 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * DT log record of one election applied to many transactions at once: the
+ * UP "set" of every listed transaction is now UP. Written instead of one UP
+ * record per transaction.
+ */
+public class BatchUP extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Integer> transactionIDs;
+	
+	private Integer UP;
+	
+	public BatchUP(Integer processID, Collection<Integer> transactionIDs, Integer UP)
+	{
+		super(-1, processID, processID, null);
+		this.transactionIDs = new ArrayList<Integer>(transactionIDs);
+		this.UP = UP;
+	}
+	
+	public Collection<Integer> getTransactionIDs()
+	{
+		return this.transactionIDs;
+	}
+	
+	public Integer getUP()
+	{
+		return this.UP;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchUP [UP=" + UP + ", transactionIDs=" + transactionIDs + ", senderID=" + senderID + "]";
+	}
+}
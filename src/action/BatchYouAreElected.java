@@ -0,0 +1,45 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import playlist.PlaylistAction;
+
+/**
+ * A YOU-ARE-ELECTED for every transaction that was waiting on the same dead
+ * coordinator, so one election covers all of them. Carries the Playlist
+ * action of each (in the same order) in case the new coordinator never
+ * heard of one. Not part of any single transaction, so its transaction ID
+ * is -1.
+ */
+public class BatchYouAreElected extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Integer> transactionIDs;
+	private ArrayList<PlaylistAction> playlistActions;
+
+	public BatchYouAreElected(Integer senderID, Integer destinationID, Collection<Integer> transactionIDs, Collection<PlaylistAction> playlistActions)
+	{
+		super(-1, senderID, destinationID, null);
+		this.transactionIDs = new ArrayList<Integer>(transactionIDs);
+		this.playlistActions = new ArrayList<PlaylistAction>(playlistActions);
+	}
+	
+	public ArrayList<Integer> getTransactionIDs()
+	{
+		return this.transactionIDs;
+	}
+	
+	public ArrayList<PlaylistAction> getPlaylistActions()
+	{
+		return this.playlistActions;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchYouAreElected [transactionIDs=" + transactionIDs + ", senderID=" + senderID
+				+ ", destinationID=" + destinationID + "]";
+	}
+}
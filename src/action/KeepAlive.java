@@ -12,5 +12,11 @@ public class KeepAlive extends Action implements Serializable {
 	{
 		super(transID, senderID, destinationID, playlistAction);
 	}
+	
+	@Override
+	public boolean isControl()
+	{
+		return true;
+	}
 
 }
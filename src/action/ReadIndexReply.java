@@ -0,0 +1,38 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Reply to a ReadIndexRequest: the transactions (at or above the
+ * requester's decidedBelow) that the sender has committed or is
+ * Committable in, and which the requester must therefore apply before
+ * serving the read.
+ */
+public class ReadIndexReply extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final int readId;
+	
+	private ArrayList<Integer> commitCertain;
+
+	public ReadIndexReply(int readId, Integer senderID, Integer destinationID, Collection<Integer> commitCertain)
+	{
+		super(-1, senderID, destinationID, null);
+		this.readId = readId;
+		this.commitCertain = new ArrayList<Integer>(commitCertain);
+	}
+	
+	public Collection<Integer> getCommitCertain()
+	{
+		return this.commitCertain;
+	}
+
+	@Override
+	public String toString() {
+		return "ReadIndexReply [readId=" + readId + ", commitCertain=" + commitCertain + ", senderID=" + senderID
+				+ ", destinationID=" + destinationID + "]";
+	}
+}
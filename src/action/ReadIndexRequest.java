@@ -0,0 +1,37 @@
+package action;
+
+import java.io.Serializable;
+
+/**
+ * Sent by a process serving a consistent read to every live process, to
+ * learn which transactions have been (or are certain to be) committed.
+ * Not part of any transaction, so its transaction ID is -1.
+ */
+public class ReadIndexRequest extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Identifies the read at the sender.
+	 */
+	public final int readId;
+	
+	/**
+	 * Every transaction below this ID is already decided at the sender, so
+	 * the reply need not mention them.
+	 */
+	public final int decidedBelow;
+
+	public ReadIndexRequest(int readId, Integer senderID, Integer destinationID, int decidedBelow)
+	{
+		super(-1, senderID, destinationID, null);
+		this.readId = readId;
+		this.decidedBelow = decidedBelow;
+	}
+
+	@Override
+	public String toString() {
+		return "ReadIndexRequest [readId=" + readId + ", decidedBelow=" + decidedBelow + ", senderID=" + senderID
+				+ ", destinationID=" + destinationID + "]";
+	}
+}
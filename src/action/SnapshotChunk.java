@@ -0,0 +1,71 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * One piece of a Playlist snapshot streamed in answer to a
+ * SnapshotRequest. Chunks are numbered from 0 and sent in order. The last
+ * chunk also carries the transactions the snapshot covers, or, if the
+ * requester turned out to be up to date, no songs and no transactions.
+ */
+public class SnapshotChunk extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final int snapshotId;
+	public final int index;
+	public final boolean last;
+	
+	// Songs in this chunk (parallel lists).
+	private ArrayList<String> names;
+	private ArrayList<String> urls;
+	
+	// Last chunk only: transactions committed in the snapshot (null if the
+	// requester is up to date), and the ID below which every transaction
+	// was decided when the snapshot was taken.
+	private ArrayList<Integer> committed;
+	public final int decidedBelow;
+
+	public SnapshotChunk(Integer senderID, Integer destinationID, int snapshotId, int index, 
+			Collection<String> names, Collection<String> urls)
+	{
+		this(senderID, destinationID, snapshotId, index, names, urls, false, null, -1);
+	}
+	
+	public SnapshotChunk(Integer senderID, Integer destinationID, int snapshotId, int index, 
+			Collection<String> names, Collection<String> urls, boolean last, Collection<Integer> committed, int decidedBelow)
+	{
+		super(-1, senderID, destinationID, null);
+		this.snapshotId = snapshotId;
+		this.index = index;
+		this.names = new ArrayList<String>(names);
+		this.urls = new ArrayList<String>(urls);
+		this.last = last;
+		this.committed = committed == null ? null : new ArrayList<Integer>(committed);
+		this.decidedBelow = decidedBelow;
+	}
+	
+	public ArrayList<String> getNames()
+	{
+		return this.names;
+	}
+	
+	public ArrayList<String> getUrls()
+	{
+		return this.urls;
+	}
+	
+	public ArrayList<Integer> getCommitted()
+	{
+		return this.committed;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotChunk [snapshotId=" + snapshotId + ", index=" + index + ", songs=" + names.size()
+				+ ", last=" + last + (committed == null ? "" : ", committed=" + committed.size() + ", decidedBelow=" + decidedBelow)
+				+ ", senderID=" + senderID + ", destinationID=" + destinationID + "]";
+	}
+}
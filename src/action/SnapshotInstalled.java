@@ -0,0 +1,63 @@
+package action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * DT log record written when a process installs a Playlist snapshot from
+ * a peer. On recovery, every transaction it lists counts as committed
+ * (its effect is already in the Playlist), and every other undecided
+ * transaction below decidedBelow counts as aborted.
+ * 
+ * With a unified DT log (no separate Playlist file) it also carries the
+ * snapshot's songs, which recovery starts the Playlist over from.
+ */
+public class SnapshotInstalled extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Integer> committed;
+	
+	// The snapshot's song names and URLs (null unless the log is unified).
+	private ArrayList<String> names;
+	private ArrayList<String> URLs;
+	
+	public final int decidedBelow;
+	
+	public SnapshotInstalled(Integer processID, Collection<Integer> committed, int decidedBelow)
+	{
+		super(-1, processID, processID, null);
+		this.committed = new ArrayList<Integer>(committed);
+		this.decidedBelow = decidedBelow;
+	}
+	
+	public SnapshotInstalled(Integer processID, Collection<Integer> committed, int decidedBelow, 
+			List<String> names, List<String> URLs)
+	{
+		this(processID, committed, decidedBelow);
+		this.names = new ArrayList<String>(names);
+		this.URLs = new ArrayList<String>(URLs);
+	}
+	
+	public ArrayList<Integer> getCommitted()
+	{
+		return this.committed;
+	}
+	
+	public ArrayList<String> getNames()
+	{
+		return this.names;
+	}
+	
+	public ArrayList<String> getURLs()
+	{
+		return this.URLs;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotInstalled [committed=" + committed + ", decidedBelow=" + decidedBelow + "]";
+	}
+}
@@ -0,0 +1,32 @@
+package action;
+
+import java.io.Serializable;
+
+/**
+ * Sent by a recovering or lagging process to a peer, asking for a snapshot
+ * of the peer's Playlist. Not part of any transaction, so its transaction
+ * ID is -1.
+ */
+public class SnapshotRequest extends Action implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Every transaction below this ID is already decided at the sender.
+	 * A peer that is not further along answers that the sender is up to
+	 * date instead of sending a snapshot.
+	 */
+	public final int decidedBelow;
+
+	public SnapshotRequest(Integer senderID, Integer destinationID, int decidedBelow)
+	{
+		super(-1, senderID, destinationID, null);
+		this.decidedBelow = decidedBelow;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotRequest [decidedBelow=" + decidedBelow + ", senderID=" + senderID + ", destinationID="
+				+ destinationID + "]";
+	}
+}
@@ -0,0 +1,23 @@
+package framework;
+
+/**
+ * Source of time for the protocol. Processes normally run on the system
+ * clock; the Simulator substitutes a virtual clock so that runs are fast
+ * and reproducible.
+ */
+public interface Clock {
+
+	/**
+	 * @return the current time in milliseconds.
+	 */
+	long currentTimeMillis();
+	
+	/**
+	 * Wall-clock time.
+	 */
+	Clock SYSTEM = new Clock() {
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+}
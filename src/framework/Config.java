@@ -36,6 +36,20 @@ public class Config {
 			addresses[i] = InetAddress.getByName(prop.getProperty("host" + i).trim());
 		}
 		
+		if (prop.getProperty("socket0") != null) {
+			socketPaths = new String[numProcesses];
+			for (int i=0; i < numProcesses; i++) {
+				socketPaths[i] = prop.getProperty("socket" + i).trim();
+			}
+		}
+		
+		if (prop.getProperty("Storage") != null) {
+			storage = prop.getProperty("Storage").trim();
+		}
+		if (prop.getProperty("StorageDir") != null) {
+			storageDir = prop.getProperty("StorageDir").trim();
+		}
+		
 		if (prop.getProperty("ProcNum") != null) {
 			
 			// MIKE: changed "procNum" to "ProcNum"
@@ -66,6 +80,21 @@ public class Config {
 	 */
 	public int[] ports;
 	
+	/**
+	 * Array of Unix domain socket paths of other hosts, or null to talk TCP.
+	 * Only usable when all hosts share one machine; when set, addresses and
+	 * ports are ignored.  Loaded from socket0, socket1, ... in the file.
+	 */
+	public String[] socketPaths;
+	
+	/**
+	 * Storage engine this host keeps its DT log and Playlist in (see
+	 * log.Storage), and the directory for its files.  Loaded from Storage
+	 * and StorageDir in the file; null for "file" and the working directory.
+	 */
+	public String storage;
+	public String storageDir;
+	
 	/**
 	 * Total number of hosts
 	 */
@@ -11,24 +11,60 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
+import action.Action;
+
+/**
+ * Reads one incoming connection. Messages carrying an encoded Action are
+ * decoded on this thread and handed to the transport's shared inbound
+ * queues (control actions to their own), so the protocol thread only
+ * drains ready Actions; anything else is kept as a raw string for getMsgs().
+ * The protocol queue is bounded: while it is full this thread stops
+ * reading, and TCP flow control pushes back on the sender.
+ */
 public class IncomingSock extends Thread {
 	final static String MSG_SEP = "&";
+	// Base64 of the Java serialization stream magic (0xACED0005).
+	final static String ENCODED_PREFIX = "rO0";
 	Socket sock;
+	SocketChannel channel;
 	InputStream in;
 	private volatile boolean shutdownSet;
 	private final ConcurrentLinkedQueue<String> queue;
-	int bytesLastChecked = 0;
+	private final BlockingQueue<Action> inbound;
+	private final Queue<Action> control;
+	private final int procNum;
 	
-	protected IncomingSock(Socket sock) throws IOException {
+	protected IncomingSock(Socket sock, int procNum, BlockingQueue<Action> inbound, Queue<Action> control) throws IOException {
 		this.sock = sock;
 		in = new BufferedInputStream(sock.getInputStream());
 		//in = sock.getInputStream();
 		sock.shutdownOutput();
 		queue = new ConcurrentLinkedQueue<String>();
+		this.procNum = procNum;
+		this.inbound = inbound;
+		this.control = control;
+	}
+	
+	/**
+	 * Reads from an accepted Unix domain socket channel.
+	 */
+	protected IncomingSock(SocketChannel channel, int procNum, BlockingQueue<Action> inbound, Queue<Action> control) throws IOException {
+		this.channel = channel;
+		in = new BufferedInputStream(Channels.newInputStream(channel));
+		channel.shutdownOutput();
+		queue = new ConcurrentLinkedQueue<String>();
+		this.procNum = procNum;
+		this.inbound = inbound;
+		this.control = control;
 	}
 	
 	protected List<String> getMsgs() {
@@ -40,46 +76,78 @@ public class IncomingSock extends Thread {
 	}
 	
 	public void run() {
+		// Blocks in read() rather than polling available(), so a message is
+		// picked up as soon as it arrives.
+		byte[] buf = new byte[8192];
+		StringBuilder pending = new StringBuilder();
 		while (!shutdownSet) {
 			try {
-				int avail = in.available();
-				if (avail == bytesLastChecked) {
-					sleep(10);
-				} else {
-					in.mark(avail);
-					byte[] data = new byte[avail];
-					in.read(data);
-					String dataStr = new String(data);
-					int curPtr = 0;
-					int curIdx;
-					while ((curIdx = dataStr.indexOf(MSG_SEP, curPtr)) != -1) {
-						queue.offer(dataStr.substring(curPtr, curIdx));
-						curPtr = curIdx + 1;
-					}
-					in.reset();
-					in.skip(curPtr);
-					bytesLastChecked = avail - curPtr;
+				int n = in.read(buf);
+				if (n < 0)
+					break;
+				pending.append(new String(buf, 0, n));
+				int curPtr = 0;
+				int curIdx;
+				while ((curIdx = pending.indexOf(MSG_SEP, curPtr)) != -1) {
+					deliver(pending.substring(curPtr, curIdx));
+					curPtr = curIdx + 1;
 				}
+				pending.delete(0, curPtr);
 			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				if (!shutdownSet)
+					e.printStackTrace();
+				break;
 			}
 		}
 		
 		shutdown();
 	}
 	
+	private void deliver(String msg) {
+		if (!msg.startsWith(ENCODED_PREFIX)) {
+			queue.offer(msg);
+			return;
+		}
+		try {
+			Object r = SocketTransport.fromString(msg);
+			if (r instanceof Action) {
+				// Broadcasts are encoded once for all destinations.
+				((Action)r).destinationID = procNum;
+				Action a = (Action)r;
+				if (a.isControl()) {
+					control.offer(a);
+				} else {
+					while (!inbound.offer(a, 100, TimeUnit.MILLISECONDS))
+						if (shutdownSet)
+							return;
+				}
+			}
+		} catch (IOException exc) {
+			System.out.println("ERROR: I/O while receiving message.");
+			exc.printStackTrace();
+		} catch (ClassNotFoundException exc) {
+			System.out.println("ERROR: Class not found while receiving message.");
+		} catch (InterruptedException exc) {
+			// Shutting down.
+		}
+	}
+	
 	public void cleanShutdown() {
 		shutdownSet = true;
+		// Wakes the reader if it is blocked in read().
+		shutdown();
 	}
 	
 	protected void shutdown() {
 		try { in.close(); } catch (IOException e) {}
 		
 		try { 
-			sock.shutdownInput();
-			sock.close(); }			
-		catch (IOException e) {}
+			if (sock != null) {
+				sock.shutdownInput();
+				sock.close();
+			} else {
+				channel.close();
+			}
+		} catch (IOException e) {}
 	}
 }
@@ -9,23 +9,60 @@ package framework;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 
+import action.Action;
+
 public class ListenServer extends Thread {
 
 	public volatile boolean killSig = false;
 	final int port;
 	final int procNum;
 	final List<IncomingSock> socketList;
+	final BlockingQueue<Action> inbound;
+	final Queue<Action> control;
 	final Config conf;
 	final ServerSocket serverSock;
+	// Listening channel instead of serverSock when the config uses Unix
+	// domain sockets.
+	final ServerSocketChannel serverChannel;
+	final Path socketPath;
 
-	protected ListenServer(Config conf, List<IncomingSock> sockets) {
+	protected ListenServer(Config conf, List<IncomingSock> sockets, BlockingQueue<Action> inbound, Queue<Action> control) {
 		this.conf = conf;
 		this.socketList = sockets;
+		this.inbound = inbound;
+		this.control = control;
 
 		procNum = conf.procNum;
+		if (conf.socketPaths != null) {
+			port = -1;
+			serverSock = null;
+			socketPath = Path.of(conf.socketPaths[procNum]);
+			try {
+				// A previous run may have left the socket file behind.
+				Files.deleteIfExists(socketPath);
+				serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+				serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+			} catch (IOException e) {
+				String errStr = String.format(
+						"Server %d: [FATAL] Can't open server socket %s", procNum,
+						socketPath);
+				conf.logger.log(Level.SEVERE, errStr);
+				throw new Error(errStr);
+			}
+			return;
+		}
+		serverChannel = null;
+		socketPath = null;
 		port = conf.ports[procNum];
 		try {
 			serverSock = new ServerSocket(port);
@@ -43,8 +80,9 @@ public class ListenServer extends Thread {
 	public void run() {
 		while (!killSig) {
 			try {
-				IncomingSock incomingSock = new IncomingSock(
-						serverSock.accept());
+				IncomingSock incomingSock = serverChannel != null
+						? new IncomingSock(serverChannel.accept(), procNum, inbound, control)
+						: new IncomingSock(serverSock.accept(), procNum, inbound, control);
 				socketList.add(incomingSock);
 				incomingSock.start();
 				//conf.logger.fine(String.format(
@@ -63,7 +101,12 @@ public class ListenServer extends Thread {
 	protected void cleanShutdown() {
 		killSig = true;
 		try {
-			serverSock.close();
+			if (serverChannel != null) {
+				serverChannel.close();
+				Files.deleteIfExists(socketPath);
+			} else {
+				serverSock.close();
+			}
 		} catch (IOException e) {
 			conf.logger.log(Level.INFO,String.format(
 					"Server %d: Error closing server socket", procNum), e);
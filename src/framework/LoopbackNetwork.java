@@ -0,0 +1,135 @@
+package framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import action.Action;
+
+/**
+ * In-JVM network for clusters whose processes all run as threads of one
+ * JVM (as Launcher runs them). Every process owns a lock-free inbound queue,
+ * and sending simply enqueues the Action on the destination's queue: no
+ * sockets, no Base64, and no serialization unless defensive copies are
+ * requested.
+ */
+public class LoopbackNetwork {
+	
+	private final ConcurrentLinkedQueue<Action>[] inboxes;
+	
+	// If set, every send delivers a private deep copy of the Action so that
+	// sender and receiver never share mutable state (as with real sockets).
+	// If not, each receiver still gets its own shallow copy, addressed to it,
+	// but shares the objects it refers to (e.g. the PlaylistAction).
+	private final boolean defensiveCopy;
+	
+	/**
+	 * @param numProcesses	number of processes that will attach
+	 * @param defensiveCopy	true to deliver a deep copy of every Action
+	 */
+	@SuppressWarnings("unchecked")
+	public LoopbackNetwork(int numProcesses, boolean defensiveCopy) {
+		this.defensiveCopy = defensiveCopy;
+		inboxes = (ConcurrentLinkedQueue<Action>[])new ConcurrentLinkedQueue<?>[numProcesses];
+		for (int i = 0; i < numProcesses; i++)
+			inboxes[i] = new ConcurrentLinkedQueue<Action>();
+	}
+	
+	/**
+	 * @return the transport used by process procNum on this network.
+	 */
+	public Transport connect(int procNum) {
+		return new Endpoint(procNum);
+	}
+	
+	public int getNumProcesses() {
+		return inboxes.length;
+	}
+	
+	private static Action copy(Action msg) throws IOException, ClassNotFoundException {
+		return deserialize(serialize(msg));
+	}
+	
+	private static byte[] serialize(Action msg) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(msg);
+		oos.close();
+		return out.toByteArray();
+	}
+	
+	private static Action deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		Action o = (Action)in.readObject();
+		in.close();
+		return o;
+	}
+	
+	private class Endpoint implements Transport {
+		private final int procNum;
+		private volatile boolean shutdownSet;
+		
+		Endpoint(int procNum) {
+			this.procNum = procNum;
+		}
+		
+		public boolean send(int process, Action msg) {
+			if (shutdownSet || process < 0 || process >= inboxes.length)
+				return false;
+			try {
+				inboxes[process].offer(defensiveCopy ? copy(msg) : msg.copyTo(process));
+				return true;
+			} catch (Exception e) {
+				System.out.println("ERROR: could not copy message for process " + process + ".");
+				return false;
+			}
+		}
+		
+		/**
+		 * With defensive copies, serializes once and gives every destination
+		 * its own copy of the bytes. Without, every destination receives its
+		 * own shallow copy of the action (see send).
+		 */
+		public boolean broadcast(Collection<Integer> processes, Action msg) {
+			if (!defensiveCopy)
+				return Transport.super.broadcast(processes, msg);
+			if (shutdownSet)
+				return false;
+			try {
+				byte[] bytes = serialize(msg);
+				boolean ok = true;
+				for (Integer process : processes) {
+					if (process < 0 || process >= inboxes.length) {
+						ok = false;
+						continue;
+					}
+					Action copy = deserialize(bytes);
+					copy.destinationID = process;
+					inboxes[process].offer(copy);
+				}
+				return ok;
+			} catch (Exception e) {
+				System.out.println("ERROR: could not copy broadcast message.");
+				return false;
+			}
+		}
+		
+		public List<Action> receive() {
+			List<Action> msgs = new ArrayList<Action>();
+			Action tmp;
+			while ((tmp = inboxes[procNum].poll()) != null)
+				msgs.add(tmp);
+			return msgs;
+		}
+		
+		public void shutdown() {
+			shutdownSet = true;
+		}
+	}
+}
@@ -10,10 +10,13 @@ package framework;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 
 public class OutgoingSock {
 	final static byte[] MSG_SEP = "&".getBytes();
 	Socket sock;
+	SocketChannel channel;
 	OutputStream out;
 	
 	protected OutgoingSock(Socket sock) throws IOException {
@@ -23,6 +26,16 @@ public class OutgoingSock {
 		sock.shutdownInput();
 	}
 	
+	/**
+	 * Writes to a connected Unix domain socket channel.
+	 */
+	protected OutgoingSock(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		
+		out = Channels.newOutputStream(channel);
+		channel.shutdownInput();
+	}
+	
 	/** 
 	 * Do not use '&' character.  This is a hardcoded separator
 	 * @param msg
@@ -39,8 +52,13 @@ public class OutgoingSock {
 		catch (IOException e) {}
 
 		try { 
-			sock.shutdownOutput();
-			sock.close(); 
+			if (sock != null) {
+				sock.shutdownOutput();
+				sock.close();
+			} else {
+				channel.shutdownOutput();
+				channel.close();
+			}
 		} catch (IOException e) {}
 	}
 }
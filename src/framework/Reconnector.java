@@ -0,0 +1,158 @@
+package framework;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+import metrics.MetricsRegistry;
+
+/**
+ * Keeps an outgoing socket open to every process on every lane of a
+ * SocketTransport. It connects the full mesh as soon as it is started and,
+ * once a socket is lost, reconnects in the background with exponential
+ * backoff, so senders never wait on connect().
+ *
+ * Each lane is an array of sockets indexed by process; it is also the lock
+ * guarding its slots.
+ */
+class Reconnector extends Thread {
+	static final long MIN_BACKOFF = 50;
+	static final long MAX_BACKOFF = 5000;
+	static final int CONNECT_TIMEOUT = 1000;
+
+	private final Config config;
+	private final MetricsRegistry metrics;
+	private final OutgoingSock[][] lanes;
+
+	// Per lane and process: when to try connecting next, and how long to
+	// wait after the next failure.
+	private final long[][] nextAttempt;
+	private final long[][] backoff;
+
+	private boolean woken;
+	private volatile boolean shutdownSet;
+
+	Reconnector(Config config, MetricsRegistry metrics, OutgoingSock[]... lanes) {
+		super("Reconnector-" + config.procNum);
+		setDaemon(true);
+		this.config = config;
+		this.metrics = metrics;
+		this.lanes = lanes;
+		nextAttempt = new long[lanes.length][config.numProcesses];
+		backoff = new long[lanes.length][config.numProcesses];
+		for (long[] b : backoff)
+			Arrays.fill(b, MIN_BACKOFF);
+	}
+
+	/**
+	 * Called by a sender, holding the lane's lock, after it dropped a broken
+	 * socket. Schedules an immediate reconnect.
+	 */
+	void lost(OutgoingSock[] lane, int proc) {
+		for (int l = 0; l < lanes.length; l++) {
+			if (lanes[l] == lane) {
+				synchronized (this) {
+					nextAttempt[l][proc] = 0;
+					backoff[l][proc] = MIN_BACKOFF;
+					woken = true;
+					notify();
+				}
+			}
+		}
+	}
+
+	public void run() {
+		while (!shutdownSet) {
+			long wakeAt = System.currentTimeMillis() + MAX_BACKOFF;
+			for (int l = 0; l < lanes.length; l++) {
+				for (int proc = 0; proc < config.numProcesses; proc++) {
+					synchronized (lanes[l]) {
+						if (lanes[l][proc] != null)
+							continue;
+					}
+					long due;
+					synchronized (this) {
+						due = nextAttempt[l][proc];
+					}
+					if (System.currentTimeMillis() >= due)
+						due = connect(l, proc);
+					wakeAt = Math.min(wakeAt, due);
+				}
+			}
+
+			synchronized (this) {
+				long wait = wakeAt - System.currentTimeMillis();
+				if (!woken && wait > 0) {
+					try {
+						wait(wait);
+					} catch (InterruptedException e) {
+						// Shutting down.
+					}
+				}
+				woken = false;
+			}
+		}
+	}
+
+	/**
+	 * Tries to connect the given lane to the given process.
+	 * @return when to try again if this attempt failed
+	 */
+	private long connect(int l, int proc) {
+		try {
+			OutgoingSock out = open(proc);
+			synchronized (lanes[l]) {
+				if (lanes[l][proc] == null) {
+					lanes[l][proc] = out;
+					out = null;
+				}
+			}
+			if (out != null)
+				out.cleanShutdown();
+			synchronized (this) {
+				backoff[l][proc] = MIN_BACKOFF;
+			}
+			metrics.increment(MetricsRegistry.CONNECTS + proc);
+			return Long.MAX_VALUE;
+		} catch (IOException e) {
+			config.logger.log(Level.FINE, String.format("Server %d: Connect to %d failed",
+					config.procNum, proc), e);
+			synchronized (this) {
+				nextAttempt[l][proc] = System.currentTimeMillis() + backoff[l][proc];
+				backoff[l][proc] = Math.min(2 * backoff[l][proc], MAX_BACKOFF);
+				return nextAttempt[l][proc];
+			}
+		}
+	}
+
+	private OutgoingSock open(int proc) throws IOException {
+		if (config.socketPaths != null) {
+			SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+			try {
+				channel.connect(UnixDomainSocketAddress.of(config.socketPaths[proc]));
+				return new OutgoingSock(channel);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+		Socket sock = new Socket();
+		try {
+			sock.connect(new InetSocketAddress(config.addresses[proc], config.ports[proc]), CONNECT_TIMEOUT);
+			return new OutgoingSock(sock);
+		} catch (IOException e) {
+			sock.close();
+			throw e;
+		}
+	}
+
+	public void cleanShutdown() {
+		shutdownSet = true;
+		interrupt();
+	}
+}
@@ -0,0 +1,162 @@
+package framework;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import action.Action;
+
+/**
+ * Network for the Simulator. Messages are not delivered when sent; each is
+ * given a delivery time on a virtual clock (a seeded random delay) and may
+ * be dropped. deliver() releases every message that is due. Delivery is
+ * FIFO per link, as with TCP. Each receiver gets its own shallow copy of
+ * the Action, addressed to it.
+ * 
+ * Not thread-safe: the Simulator drives everything from one thread.
+ */
+public class SimulatedNetwork {
+	
+	private static class Envelope implements Comparable<Envelope> {
+		final long deliverAt;
+		final long seq;
+		final Action msg;
+		final int destination;
+		
+		Envelope(long deliverAt, long seq, Action msg, int destination) {
+			this.deliverAt = deliverAt;
+			this.seq = seq;
+			this.msg = msg;
+			this.destination = destination;
+		}
+		
+		public int compareTo(Envelope o) {
+			if (deliverAt != o.deliverAt)
+				return Long.compare(deliverAt, o.deliverAt);
+			return Long.compare(seq, o.seq);
+		}
+	}
+	
+	private final Clock clock;
+	private final Random random;
+	private final PriorityQueue<Envelope> inFlight;
+	private final ArrayDeque<Action>[] inboxes;
+	
+	// Latest delivery time scheduled on each link [sender][destination].
+	private final long[][] lastDelivery;
+	
+	private long minDelay = 1;
+	private long maxDelay = 5;
+	private double dropRate = 0.0;
+	private long seq = 0;
+	
+	private long sent = 0;
+	private long dropped = 0;
+	
+	/**
+	 * @param numProcesses	number of processes that will attach
+	 * @param clock			virtual clock driving delivery
+	 * @param random		seeded source of delays and drops
+	 */
+	@SuppressWarnings("unchecked")
+	public SimulatedNetwork(int numProcesses, Clock clock, Random random) {
+		this.clock = clock;
+		this.random = random;
+		inFlight = new PriorityQueue<Envelope>();
+		inboxes = (ArrayDeque<Action>[])new ArrayDeque<?>[numProcesses];
+		for (int i = 0; i < numProcesses; i++)
+			inboxes[i] = new ArrayDeque<Action>();
+		lastDelivery = new long[numProcesses][numProcesses];
+	}
+	
+	/**
+	 * Every message takes between min and max (inclusive) virtual
+	 * milliseconds to arrive. min must be at least 1.
+	 */
+	public void setDelay(long min, long max) {
+		if (min < 1 || max < min)
+			throw new IllegalArgumentException("Delay must satisfy 1 <= min <= max");
+		minDelay = min;
+		maxDelay = max;
+	}
+	
+	/**
+	 * Every message is dropped with the given probability.
+	 */
+	public void setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+	}
+	
+	/**
+	 * @return the transport used by process procNum on this network.
+	 */
+	public Transport connect(int procNum) {
+		return new Endpoint(procNum);
+	}
+	
+	/**
+	 * Moves every message due at or before the current virtual time into
+	 * its destination's inbox.
+	 */
+	public void deliver() {
+		long now = clock.currentTimeMillis();
+		while (!inFlight.isEmpty() && inFlight.peek().deliverAt <= now) {
+			Envelope e = inFlight.poll();
+			inboxes[e.destination].add(e.msg);
+		}
+	}
+	
+	/**
+	 * @return virtual time of the next pending delivery, or Long.MAX_VALUE.
+	 */
+	public long nextDeliveryTime() {
+		return inFlight.isEmpty() ? Long.MAX_VALUE : inFlight.peek().deliverAt;
+	}
+	
+	public long getSent() {
+		return sent;
+	}
+	
+	public long getDropped() {
+		return dropped;
+	}
+	
+	private class Endpoint implements Transport {
+		private final int procNum;
+		
+		Endpoint(int procNum) {
+			this.procNum = procNum;
+		}
+		
+		public boolean send(int process, Action msg) {
+			if (process < 0 || process >= inboxes.length)
+				return false;
+			sent++;
+			
+			// Draw both the delay and the drop sample for every message, dropped
+			// or not, so that changing the drop rate does not shift every later
+			// delay.
+			long delay = minDelay + (long)(random.nextDouble() * (maxDelay - minDelay + 1));
+			if (random.nextDouble() < dropRate) {
+				dropped++;
+				return true;
+			}
+			
+			long deliverAt = Math.max(clock.currentTimeMillis() + delay, lastDelivery[procNum][process]);
+			lastDelivery[procNum][process] = deliverAt;
+			inFlight.add(new Envelope(deliverAt, seq++, msg.copyTo(process), process));
+			return true;
+		}
+		
+		public List<Action> receive() {
+			List<Action> msgs = new ArrayList<Action>(inboxes[procNum]);
+			inboxes[procNum].clear();
+			return msgs;
+		}
+		
+		public void shutdown() {
+		}
+	}
+}
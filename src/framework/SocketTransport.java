@@ -0,0 +1,333 @@
+/**
+ * This code may be modified and used for non-commercial 
+ * purposes as long as attribution is maintained.
+ * 
+ * @author: Isaac Levy
+ */
+
+/**
+* The sendMsg method has been modified by Navid Yaghmazadeh to fix a bug regarding to send a message to a reconnected socket.
+*/
+
+package framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+import action.Action;
+import metrics.MetricsRegistry;
+
+/**
+ * Stream socket transport: one listening socket per process plus an
+ * outgoing socket to every peer, all opened eagerly and kept open by a
+ * Reconnector. Talks TCP, or Unix domain sockets when the config gives
+ * socket paths (all processes on one host).
+ * Sends to a peer that is not connected fail at once. Messages are Java-serialized and Base64
+ * encoded, separated by "&". Each incoming socket decodes its own messages
+ * into one shared inbound queue, which receive() drains.
+ * 
+ * Control actions (heartbeats) travel on a second socket to each peer with
+ * its own inbound queue, so a burst of protocol messages does not delay
+ * them and they do not delay protocol messages.
+ * 
+ * Protocol actions are written by one thread per peer from a bounded send
+ * buffer (see credits()), and decoded into a bounded inbound queue, so a
+ * slow process pushes back on its senders instead of stalling them or
+ * growing their memory.
+ * @author ilevy
+ *
+ */
+public class SocketTransport implements Transport {
+	// Protocol msgs buffered per destination, and Actions decoded but not
+	// yet received, before senders are pushed back.
+	static final int SEND_BUFFER = 256;
+	static final int INBOUND_CAPACITY = 4096;
+	
+	private final Config config;
+	private final List<IncomingSock> inSockets;
+	private final LinkedBlockingQueue<Action> inbound;
+	private final ConcurrentLinkedQueue<Action> control;
+	private final OutgoingSock[] outSockets;
+	private final OutgoingSock[] controlSockets;
+	private final PeerWriter[] writers;
+	private final ListenServer listener;
+	private final Reconnector reconnector;
+	private final MetricsRegistry metrics;
+	
+	public SocketTransport(Config config) {
+		this.config = config;
+		inSockets = Collections.synchronizedList(new ArrayList<IncomingSock>());
+		inbound = new LinkedBlockingQueue<Action>(INBOUND_CAPACITY);
+		control = new ConcurrentLinkedQueue<Action>();
+		listener = new ListenServer(config, inSockets, inbound, control);
+		outSockets = new OutgoingSock[config.numProcesses];
+		controlSockets = new OutgoingSock[config.numProcesses];
+		metrics = MetricsRegistry.forProcess(config.procNum);
+		reconnector = new Reconnector(config, metrics, outSockets, controlSockets);
+		writers = new PeerWriter[config.numProcesses];
+		for (int i = 0; i < config.numProcesses; i++)
+			writers[i] = new PeerWriter(i);
+		listener.start();
+		reconnector.start();
+		for (PeerWriter w : writers)
+			w.start();
+	}
+	
+	/**
+	 * Send a msg to another process. Fails at once if there is no open
+	 * socket to it; the reconnector opens one in the background.
+	 * @param process int specified in the config file - 0 based
+	 * @param msg Do not use the "&" character.  This is hardcoded as a message separator. 
+	 *            Sends as ASCII.  Include the sending server ID in the message
+	 * @return bool indicating success
+	 */
+	public boolean sendMsg(int process, String msg) {
+		return write(outSockets, process, msg);
+	}
+	
+	/**
+	 * Sends a msg on the control lane: its own socket to the process, so
+	 * heartbeats never wait behind protocol traffic.
+	 */
+	private boolean sendControlMsg(int process, String msg) {
+		return write(controlSockets, process, msg);
+	}
+	
+	/**
+	 * Hands a protocol msg to the process' writer. Fails at once if the
+	 * process is not connected or its send buffer is full.
+	 */
+	private boolean enqueue(int process, String msg) {
+		synchronized (outSockets) {
+			if (outSockets[process] == null)
+				return notConnected(process);
+		}
+		if (!writers[process].queue.offer(msg)) {
+			metrics.increment(MetricsRegistry.SEND_FAILED + process);
+			config.logger.fine(String.format("Server %d: Msg to %d dropped, send buffer full.",
+				config.procNum, process));
+			return false;
+		}
+		return true;
+	}
+	
+	private boolean notConnected(int process) {
+		// Not connected yet, or any more: the reconnector is on it.
+		metrics.increment(MetricsRegistry.SEND_FAILED + process);
+		config.logger.fine(String.format("Server %d: Msg to %d dropped, not connected.",
+			config.procNum, process));
+		return false;
+	}
+	
+	// The lane's lock guards only its socket slots; the write itself happens
+	// outside it, so a slow process holds up no one else's messages.
+	private boolean write(OutgoingSock[] lane, int process, String msg) {
+		OutgoingSock sock;
+		synchronized (lane) {
+			sock = lane[process];
+		}
+		if (sock == null)
+			return notConnected(process);
+		try {
+			sock.sendMsg(msg);
+		} catch (IOException e) { 
+			sock.cleanShutdown();
+			synchronized (lane) {
+				if (lane[process] == sock) {
+					lane[process] = null;
+					reconnector.lost(lane, process);
+				}
+			}
+			metrics.increment(MetricsRegistry.SEND_FAILED + process);
+			config.logger.info(String.format("Server %d: Msg to %d failed.", 
+				config.procNum, process));
+			config.logger.log(Level.FINE, String.format("Server %d: Socket to %d error", 
+				config.procNum, process), e);
+			return false;
+		}
+		// Payload plus separator.
+		metrics.add(MetricsRegistry.BYTES_OUT + process, msg.length() + 1);
+		return true;
+	}
+	
+	/**
+	 * Free space in the process' send buffer; none while the process is not
+	 * connected, so that senders hold their msgs until the reconnector has
+	 * a socket to it rather than have them dropped.
+	 */
+	public int credits(int process) {
+		synchronized (outSockets) {
+			if (outSockets[process] == null)
+				return 0;
+		}
+		return writers[process].queue.remainingCapacity();
+	}
+	
+	/**
+	 * Writes the protocol msgs queued for one process, so a process that
+	 * reads slowly blocks only its own writer. The queue is bounded; its free
+	 * space is the credit senders see.
+	 */
+	private class PeerWriter extends Thread {
+		final int process;
+		final ArrayBlockingQueue<String> queue;
+		
+		PeerWriter(int process) {
+			super("PeerWriter-" + config.procNum + "-" + process);
+			setDaemon(true);
+			this.process = process;
+			this.queue = new ArrayBlockingQueue<String>(SEND_BUFFER);
+		}
+		
+		public void run() {
+			try {
+				while (true)
+					write(outSockets, process, queue.take());
+			} catch (InterruptedException e) {
+				// Shutting down.
+			}
+		}
+	}
+	
+	static String toString(Serializable o) throws IOException 
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(o);
+		oos.close();
+		return Base64.getEncoder().encodeToString(out.toByteArray());
+	}
+	
+	public boolean send(int process, Action msg)
+	{
+		try
+		{
+			String encoded = toString((Serializable)msg);
+			return msg.isControl() ? sendControlMsg(process, encoded) : enqueue(process, encoded);
+		}
+		catch (Exception exc)
+		{
+			System.out.println("ERROR: IOException while sending message.");
+			return false;
+		}
+	}
+	
+	/**
+	 * Serializes and encodes the action once and writes the same string to
+	 * every destination. The socket identifies the destination, so receive()
+	 * fills in destinationID.
+	 */
+	public boolean broadcast(Collection<Integer> processes, Action msg)
+	{
+		String encoded;
+		try
+		{
+			encoded = toString((Serializable)msg);
+		}
+		catch (Exception exc)
+		{
+			System.out.println("ERROR: IOException while sending message.");
+			return false;
+		}
+		boolean ok = true;
+		for (Integer process : processes)
+		{
+			ok &= msg.isControl() ? sendControlMsg(process, encoded) : enqueue(process, encoded);
+		}
+		return ok;
+	}
+	
+	/**
+	 * Return a list of raw string msgs received on established incoming
+	 * sockets. Encoded Actions are not included; see receive().
+	 * @return list of messages sorted by socket, in FIFO order. *not sorted by time received*
+	 */
+	public synchronized List<String> getReceivedMsgs() {
+		List<String> objs = new ArrayList<String>();
+		synchronized(inSockets) {
+			ListIterator<IncomingSock> iter  = inSockets.listIterator();
+			while (iter.hasNext()) {
+				IncomingSock curSock = iter.next();
+				try {
+					objs.addAll(curSock.getMsgs());
+				} catch (Exception e) {
+					config.logger.log(Level.INFO, 
+							"Server " + config.procNum + " received bad data on a socket", e);
+					curSock.cleanShutdown();
+					iter.remove();
+				}
+			}
+		}
+		
+		return objs;
+	}
+	
+	static Object fromString(String s) throws IOException, ClassNotFoundException 
+	{
+		byte[] data = Base64.getDecoder().decode(s);
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		Object o = in.readObject();
+		in.close();
+		return o;
+	}
+	
+	/**
+	 * Drains the actions the incoming sockets have already decoded, control
+	 * actions first.
+	 */
+	public List<Action> receive() 
+	{
+		List<Action> received = new ArrayList<Action>();
+		Action a;
+		while ((a = control.poll()) != null)
+		{
+			received.add(a);
+		}
+		while ((a = inbound.poll()) != null)
+		{
+			received.add(a);
+		}
+		return received;
+	}
+	
+	/**
+	 * Shuts down threads and sockets.
+	 */
+	public synchronized void shutdown() {
+		reconnector.cleanShutdown();
+		for (PeerWriter w : writers)
+			w.interrupt();
+		listener.cleanShutdown();
+        if(inSockets != null) {
+		    for (IncomingSock sock : inSockets)
+			    if(sock != null)
+                    sock.cleanShutdown();
+        }
+		synchronized (outSockets) {
+			for (OutgoingSock sock : outSockets)
+				if (sock != null)
+					sock.cleanShutdown();
+		}
+		synchronized (controlSockets) {
+			for (OutgoingSock sock : controlSockets)
+				if (sock != null)
+					sock.cleanShutdown();
+		}
+		
+	}
+
+}
@@ -0,0 +1,58 @@
+package framework;
+
+import java.util.Collection;
+import java.util.List;
+
+import action.Action;
+
+/**
+ * A way of moving Actions between processes. NetController delegates to
+ * one of these; SocketTransport talks TCP between (possibly remote) hosts,
+ * LoopbackNetwork hands Actions between processes running in one JVM.
+ */
+public interface Transport {
+
+	/**
+	 * Send an action to another process.
+	 * @param process	destination, as numbered in the config - 0 based
+	 * @param msg		action to deliver
+	 * @return bool indicating success
+	 */
+	boolean send(int process, Action msg);
+	
+	/**
+	 * Send the same action to several processes. Transports that encode
+	 * actions encode it once; the receiver's copy has destinationID set to
+	 * the receiver where the transport can do so. The default simply sends
+	 * the same object to each destination.
+	 * @param processes	destinations, as numbered in the config - 0 based
+	 * @param msg		action to deliver
+	 * @return bool indicating success for every destination
+	 */
+	default boolean broadcast(Collection<Integer> processes, Action msg) {
+		boolean ok = true;
+		for (Integer process : processes) {
+			ok &= send(process, msg);
+		}
+		return ok;
+	}
+	
+	/**
+	 * @return how many more actions may be sent to the process right now
+	 *         without exceeding its send buffer. Senders hold back actions
+	 *         to a process without credit. The default is unbounded.
+	 */
+	default int credits(int process) {
+		return Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * @return all actions received since the last call, in FIFO order per sender.
+	 */
+	List<Action> receive();
+	
+	/**
+	 * Releases threads and connections held by this transport.
+	 */
+	void shutdown();
+}
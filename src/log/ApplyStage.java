@@ -0,0 +1,211 @@
+package log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import metrics.MetricsRegistry;
+
+/**
+ * Applies committed Playlist actions to a PlaylistLog on a thread of its
+ * own, so the protocol thread never waits on the Playlist being rewritten
+ * to disk.
+ * 
+ * Actions are applied in the order they were submitted (commit order).
+ * Each submission gets a commit sequence number (1, 2, ...), and
+ * appliedThrough() is the highest one applied so far. The queue is
+ * bounded: once CAPACITY commits are waiting, submit() blocks until the
+ * apply thread catches up.
+ * 
+ * An inline stage (no thread) applies each action inside submit(); the
+ * Simulator uses it so runs stay deterministic.
+ */
+public class ApplyStage
+{
+	public static final int CAPACITY = 1024;
+	
+	/**
+	 * A committed action waiting to be applied.
+	 */
+	private static class Entry
+	{
+		final ArrayList<String> command;
+		final int transID;
+		final long sequence;
+		
+		Entry(ArrayList<String> command, int transID, long sequence)
+		{
+			this.command 	= command;
+			this.transID 	= transID;
+			this.sequence 	= sequence;
+		}
+	}
+	
+	private final PlaylistLog playlistLog;
+	private final MetricsRegistry metrics;
+	private final BlockingQueue<Entry> queue;
+	private final Thread thread;
+	
+	// Commit sequence of the last action submitted (submitting thread only)
+	// and of the last one applied.
+	private long submitted;
+	private volatile long appliedThrough;
+	
+	private volatile boolean crashed;
+	
+	/**
+	 * @param threaded	false for an inline stage
+	 */
+	public ApplyStage(PlaylistLog playlistLog, MetricsRegistry metrics, String name, boolean threaded)
+	{
+		this.playlistLog 	= playlistLog;
+		this.metrics 		= metrics;
+		this.queue 			= new ArrayBlockingQueue<Entry>(CAPACITY);
+		
+		if (threaded)
+		{
+			this.thread = new Thread(this::run, name);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+		else
+		{
+			this.thread = null;
+		}
+	}
+	
+	/**
+	 * Queues a committed action to be applied after every action submitted
+	 * before it.
+	 * 
+	 * @return its commit sequence number.
+	 */
+	public long submit(ArrayList<String> playlistCommand, int transID)
+	{
+		Entry e = new Entry(playlistCommand, transID, ++this.submitted);
+		if (this.thread == null)
+		{
+			apply(e);
+			return e.sequence;
+		}
+		
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				this.queue.put(e);
+				break;
+			}
+			catch (InterruptedException ie)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return e.sequence;
+	}
+	
+	/**
+	 * @return the commit sequence number of the last action applied (0 if
+	 * 		   none).
+	 */
+	public long appliedThrough()
+	{
+		return this.appliedThrough;
+	}
+	
+	/**
+	 * @return true if every action submitted has been applied.
+	 */
+	public boolean isDrained()
+	{
+		return this.appliedThrough == this.submitted;
+	}
+	
+	/**
+	 * Waits until every action submitted so far has been applied.
+	 */
+	public void drain() throws InterruptedException
+	{
+		long target = this.submitted;
+		synchronized (this)
+		{
+			while (this.appliedThrough < target && !this.crashed)
+			{
+				wait();
+			}
+		}
+	}
+	
+	/**
+	 * Stops applying, as if the process crashed: the action being applied
+	 * is finished, queued ones are dropped (recovery replays them from the
+	 * DT log). Returns once the apply thread has stopped.
+	 */
+	public void crash()
+	{
+		this.crashed = true;
+		this.queue.clear();
+		if (this.thread != null)
+		{
+			this.thread.interrupt();
+			try
+			{
+				this.thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this)
+		{
+			notifyAll();
+		}
+	}
+	
+	private void run()
+	{
+		while (!this.crashed)
+		{
+			Entry e;
+			try
+			{
+				e = this.queue.take();
+			}
+			catch (InterruptedException ie)
+			{
+				continue;
+			}
+			if (this.crashed)
+			{
+				break;
+			}
+			apply(e);
+		}
+	}
+	
+	private void apply(Entry e)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			this.playlistLog.log(e.command, e.transID);
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+		this.metrics.recordSince(MetricsRegistry.PLAYLIST_APPLY, start);
+		
+		synchronized (this)
+		{
+			this.appliedThrough = e.sequence;
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package log;
+
+/**
+ * The "file" Storage engine: a DT log and a Playlist in files of their own,
+ * each rewritten whole on every change.
+ */
+public class FileStorage implements Storage
+{
+	@Override
+	public TransactionLog openTransactionLog(String directory, int procNum, boolean reset)
+	{
+		return new TransactionLog(reset, Storage.path(directory, procNum, ".log"));
+	}
+	
+	@Override
+	public PlaylistLog openPlaylistLog(String directory, int procNum, boolean reset)
+	{
+		return new PlaylistLog(reset, Storage.path(directory, procNum, "Playlist.log"));
+	}
+	
+	@Override
+	public boolean isUnified()
+	{
+		return false;
+	}
+}
@@ -0,0 +1,134 @@
+package log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import action.Action;
+
+/**
+ * WriteAheadLog in a file, appended through a FileChannel. Each record is
+ * one sequential write and one sync, however long the log grows.
+ * 
+ * A record is its length followed by the serialized Action. A record cut
+ * short by a crash is dropped (and truncated away) when the log is opened.
+ */
+public class FileWriteAheadLog extends WriteAheadLog
+{
+	/**
+	 * Location of log on disk.
+	 */
+	private File file;
+	
+	private FileChannel channel;
+	
+	/**
+	 * Opens (or creates) a log.
+	 * @param reset		true to start from an empty log
+	 * @param filename	where the log is stored
+	 */
+	public FileWriteAheadLog(boolean reset, String filename)
+	{
+		this.file = new File(filename);
+		try
+		{
+			if (reset)
+			{
+				this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, 
+						StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+				this.channel.force(true);
+			}
+			else
+			{
+				this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, 
+						StandardOpenOption.WRITE, StandardOpenOption.READ);
+				readFromDisk();
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Exception while opening log " + filename + ": ");
+			e.printStackTrace();
+		}
+	}
+	
+	@Override
+	public synchronized boolean log(Action action, boolean force)
+	{
+		try
+		{
+			byte[] bytes = encode(action);
+			ByteBuffer record = ByteBuffer.allocate(4 + bytes.length);
+			record.putInt(bytes.length);
+			record.put(bytes);
+			record.flip();
+			while (record.hasRemaining())
+			{
+				this.channel.write(record);
+			}
+			if (force)
+			{
+				this.channel.force(false);
+			}
+			return true;
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception while writing log to disk: ");
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Reads every whole record, then positions the file for appending
+	 * after the last one.
+	 */
+	private void readFromDisk() throws IOException
+	{
+		long size = this.channel.size();
+		long position = 0;
+		ByteBuffer length = ByteBuffer.allocate(4);
+		while (position + 4 <= size)
+		{
+			length.clear();
+			this.channel.read(length, position);
+			length.flip();
+			int n = length.getInt();
+			if (n <= 0 || position + 4 + n > size)
+			{
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(n);
+			while (body.hasRemaining() && this.channel.read(body, position + 4 + body.position()) >= 0)
+			{
+			}
+			Action action = decode(body.array());
+			if (action == null)
+			{
+				break;
+			}
+			this.recovered.add(action);
+			position += 4 + n;
+		}
+		
+		// Drop a torn last record.
+		this.channel.truncate(position);
+		this.channel.position(position);
+	}
+	
+	@Override
+	public synchronized void close()
+	{
+		try
+		{
+			this.channel.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
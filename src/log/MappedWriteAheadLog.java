@@ -0,0 +1,139 @@
+package log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import action.Action;
+
+/**
+ * WriteAheadLog in a memory-mapped file. An append is a copy into the
+ * mapping and a sync of just the pages it touched, with no system call per
+ * write; the mapping grows (doubling) as the log does.
+ * 
+ * Records have the same layout as in FileWriteAheadLog, but each record's
+ * body is written before its length: until the length is in place the
+ * record reads as the end of the log, so a torn append is never replayed.
+ */
+public class MappedWriteAheadLog extends WriteAheadLog
+{
+	/**
+	 * Initial size of the mapping.
+	 */
+	public static final int INITIAL_SIZE = 1 << 20;
+	
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	
+	// Where the next record goes, and where the records not yet synced
+	// (logged without forcing) start.
+	private int position;
+	private int unforced;
+	
+	/**
+	 * Opens (or creates) a log.
+	 * @param reset		true to start from an empty log
+	 * @param filename	where the log is stored
+	 */
+	public MappedWriteAheadLog(boolean reset, String filename)
+	{
+		try
+		{
+			this.channel = FileChannel.open(new File(filename).toPath(), StandardOpenOption.CREATE, 
+					StandardOpenOption.WRITE, StandardOpenOption.READ);
+			if (reset)
+			{
+				this.channel.truncate(0);
+			}
+			this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(this.channel.size(), INITIAL_SIZE));
+			readFromMap();
+		}
+		catch (IOException e)
+		{
+			System.out.println("Exception while opening log " + filename + ": ");
+			e.printStackTrace();
+		}
+	}
+	
+	@Override
+	public synchronized boolean log(Action action, boolean force)
+	{
+		try
+		{
+			byte[] bytes = encode(action);
+			int need = 4 + bytes.length;
+			if (this.position + need > this.map.capacity())
+			{
+				long size = this.map.capacity();
+				while (this.position + need > size)
+				{
+					size *= 2;
+				}
+				this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			this.map.put(this.position + 4, bytes);
+			this.map.putInt(this.position, bytes.length);
+			this.position += need;
+			if (force)
+			{
+				this.map.force(this.unforced, this.position - this.unforced);
+				this.unforced = this.position;
+			}
+			return true;
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception while writing log to disk: ");
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Reads every whole record, then clears what follows the last one, so
+	 * that the remains of a torn append cannot be mistaken for records later.
+	 */
+	private void readFromMap()
+	{
+		int capacity = this.map.capacity();
+		while (this.position + 4 <= capacity)
+		{
+			int n = this.map.getInt(this.position);
+			if (n <= 0 || this.position + 4 + n > capacity)
+			{
+				break;
+			}
+			byte[] bytes = new byte[n];
+			this.map.get(this.position + 4, bytes);
+			Action action = decode(bytes);
+			if (action == null)
+			{
+				break;
+			}
+			this.recovered.add(action);
+			this.position += 4 + n;
+		}
+		
+		this.unforced = this.position;
+		for (int i = this.position; i < capacity; i++)
+		{
+			this.map.put(i, (byte)0);
+		}
+		this.map.force();
+	}
+	
+	@Override
+	public synchronized void close()
+	{
+		try
+		{
+			this.channel.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import action.Action;
+
+/**
+ * WriteAheadLog kept in memory, for benchmarks and simulation: it costs
+ * nothing to write, so what remains is the protocol's own overhead.
+ * 
+ * Logs are kept by name for the life of the JVM, so a process killed and
+ * revived in the same JVM (Launcher, Simulator) recovers from its log as
+ * it would from a file. Records are kept as they are, not copied.
+ */
+public class MemoryWriteAheadLog extends WriteAheadLog
+{
+	private static final ConcurrentHashMap<String, List<Action>> logs = new ConcurrentHashMap<String, List<Action>>();
+	
+	private final List<Action> records;
+	
+	/**
+	 * Opens (or creates) a log.
+	 * @param reset		true to start from an empty log
+	 * @param name		which log
+	 */
+	public MemoryWriteAheadLog(boolean reset, String name)
+	{
+		if (reset)
+		{
+			logs.put(name, new ArrayList<Action>());
+		}
+		this.records = logs.computeIfAbsent(name, n -> new ArrayList<Action>());
+		synchronized (this.records)
+		{
+			this.recovered.addAll(this.records);
+		}
+	}
+	
+	@Override
+	public boolean log(Action action, boolean force)
+	{
+		synchronized (this.records)
+		{
+			this.records.add(action);
+		}
+		return true;
+	}
+}
@@ -7,8 +7,16 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
+import action.Action;
+import action.Commit;
+import action.SnapshotInstalled;
 import playlist.Playlist;
+import playlist.PlaylistSnapshot;
+import playlist.ReadResult;
 
 /**
  * Stable storage abstraction for the 3PC protocol. Provides utilities for 
@@ -25,7 +33,17 @@ public class PlaylistLog {
 	/**
 	 * Memory copy of Playlist.
 	 */
-	private Playlist playlist;
+	private volatile Playlist playlist;
+	
+	/**
+	 * Creates a Playlist log kept only in memory, materialized from the
+	 * COMMIT records of a unified DT log (see replay) rather than stored in
+	 * a file of its own.
+	 */
+	public PlaylistLog()
+	{
+		this.playlist = new Playlist();
+	}
 	
 	/**
 	 * Default constructor.
@@ -83,6 +101,90 @@ public class PlaylistLog {
 		return this.playlist;
 	}
 	
+	/**
+	 * Returns a consistent view of the Playlist as of the last transaction
+	 * applied. Safe to call from any thread; takes no lock, so it never
+	 * waits on a commit being applied.
+	 */
+	public PlaylistSnapshot snapshot()
+	{
+		return this.playlist.snapshot();
+	}
+	
+	/**
+	 * Returns a view of the Playlist as of the given applied transaction
+	 * (see Playlist.snapshotAt). Safe to call from any thread, lock-free.
+	 */
+	public PlaylistSnapshot snapshotAt(int transID)
+	{
+		return this.playlist.snapshotAt(transID);
+	}
+	
+	/**
+	 * Looks up one song. Safe to call from any thread, lock-free; does not
+	 * touch the disk.
+	 * 
+	 * @param songName, the song to look up.
+	 * @param consistent, whether the caller has established that this
+	 * Playlist is up to date (only used to tag the result).
+	 */
+	public ReadResult lookup(String songName, boolean consistent)
+	{
+		PlaylistSnapshot s = snapshot();
+		return new ReadResult(songName, s.getUrl(songName), 
+				s.getLastTransaction(), s.getVersion(songName), consistent);
+	}
+	
+	/**
+	 * Returns one page of songs by name prefix (see Playlist.getPage).
+	 * Safe to call from any thread.
+	 */
+	public synchronized List<Map.Entry<String, String>> page(String prefix, String after, int limit)
+	{
+		return this.playlist.getPage(prefix, after, limit);
+	}
+	
+	/**
+	 * Returns a copy of all songs in name order and of the completed
+	 * transaction IDs, taken atomically. Safe to call from any thread,
+	 * lock-free.
+	 * 
+	 * @param names, receives the song names.
+	 * @param URLs, receives the URL of each song.
+	 * @return the IDs of the transactions the copy reflects.
+	 */
+	public ArrayList<Integer> snapshot(List<String> names, List<String> URLs)
+	{
+		PlaylistSnapshot s = snapshot();
+		for (Map.Entry<String, String> song : s.getSongs().entrySet())
+		{
+			names.add(song.getKey());
+			URLs.add(song.getValue());
+		}
+		return new ArrayList<Integer>(s.getTransactionsCompleted());
+	}
+	
+	/**
+	 * Replaces the Playlist (in memory and on disk) with one received from
+	 * a peer.
+	 * 
+	 * @return true if successful
+	 */
+	public synchronized boolean install(Playlist snapshot)
+	{
+		this.playlist = snapshot;
+		return saveToDisk();
+	}
+	
+	/**
+	 * Returns a copy of the songs stored under a URL, sorted by name.
+	 * Safe to call from any thread.
+	 */
+	public synchronized TreeSet<String> songsByUrl(String URL)
+	{
+		return new TreeSet<String>(this.playlist.getSongsByUrl(URL));
+	}
+	
 	/**
 	 * Log a new Playlist to stable storage.
 	 * 
@@ -92,15 +194,16 @@ public class PlaylistLog {
 	 * 
 	 * @return true if successful
 	 */
-	public boolean log(ArrayList<String> playlistCommand, int transID) throws Exception
+	public synchronized boolean log(ArrayList<String> playlistCommand, int transID) throws Exception
 	{
-		System.out.println("transID: " + transID + ", logging new Playlist to disk!");
-		
 		// Delete the old File (we want to write a fresh copy of the
 		// Playlist entirely.
 		try
 		{
-			Files.deleteIfExists(this.file.toPath());
+			if (this.file != null)
+			{
+				Files.deleteIfExists(this.file.toPath());
+			}
 		}
 		catch (Exception e)
 		{
@@ -133,6 +236,34 @@ public class PlaylistLog {
 		return saveToDisk();
 	}
 	
+	/**
+	 * Rebuilds a materialized Playlist from a unified DT log: applies every
+	 * COMMIT's action in log order, starting over from the contents of each
+	 * snapshot installed.
+	 */
+	public synchronized void replay(List<Action> history)
+	{
+		for (Action a : history)
+		{
+			if (a instanceof SnapshotInstalled && ((SnapshotInstalled) a).getNames() != null)
+			{
+				SnapshotInstalled s = (SnapshotInstalled) a;
+				this.playlist = Playlist.fromSnapshot(s.getNames(), s.getURLs(), s.getCommitted());
+			}
+			else if (a instanceof Commit && a.playlistAction != null)
+			{
+				try
+				{
+					log(a.playlistAction.getCommand(), a.transactionID);
+				}
+				catch (Exception e)
+				{
+					// It failed the same way when first committed.
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Write Playlist to disk.
 	 * 
@@ -140,6 +271,10 @@ public class PlaylistLog {
 	 */
 	private boolean saveToDisk()
 	{
+		if (this.file == null)
+		{
+			return true;
+		}
 		try
 		{
 			FileOutputStream streamOut = new FileOutputStream(this.file);
@@ -0,0 +1,68 @@
+package log;
+
+import java.io.File;
+
+/**
+ * A storage engine: where a process keeps its DT log and its Playlist.
+ * Process3PC opens both through the engine named in its Config.
+ * 
+ * The engines are:
+ * 
+ * file	 	- the DT log (process<i>.log) and the Playlist 
+ * 			  (process<i>Playlist.log) each rewritten whole to a file per change.
+ * wal	 	- one append-only log file (process<i>.wal), synced per record.
+ * mmap	 	- the same log in a memory-mapped file (process<i>.mmap).
+ * memory	- the same log in memory only (see MemoryWriteAheadLog).
+ * 
+ * All but file are unified: COMMIT records carry the Playlist's changes,
+ * and the Playlist is kept in memory and rebuilt from them on recovery.
+ */
+public interface Storage
+{
+	/**
+	 * Names of the built-in engines; file is the default.
+	 */
+	String[] ENGINES = { "file", "wal", "mmap", "memory" };
+	
+	/**
+	 * Opens a process's DT log.
+	 * @param directory	where the process keeps its files
+	 * @param reset		true to start from an empty log
+	 */
+	TransactionLog openTransactionLog(String directory, int procNum, boolean reset);
+	
+	/**
+	 * Opens a process's Playlist. For a unified engine, it is empty until
+	 * replayed from the DT log (PlaylistLog.replay).
+	 */
+	PlaylistLog openPlaylistLog(String directory, int procNum, boolean reset);
+	
+	/**
+	 * @return true if the Playlist is materialized from the DT log.
+	 */
+	boolean isUnified();
+	
+	/**
+	 * @return the built-in engine with the given name.
+	 */
+	static Storage forName(String name)
+	{
+		switch (name)
+		{
+			case "file":	return new FileStorage();
+			case "wal":		return new UnifiedStorage(".wal", FileWriteAheadLog::new);
+			case "mmap":	return new UnifiedStorage(".mmap", MappedWriteAheadLog::new);
+			case "memory":	return new UnifiedStorage(".memory", MemoryWriteAheadLog::new);
+			default:
+				throw new IllegalArgumentException("Unknown storage engine " + name + ", expected one of file, wal, mmap or memory");
+		}
+	}
+	
+	/**
+	 * @return the path of a process's file with the given suffix.
+	 */
+	static String path(String directory, int procNum, String suffix)
+	{
+		return new File(directory, "process" + procNum + suffix).getPath();
+	}
+}
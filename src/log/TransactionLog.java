@@ -12,6 +12,11 @@ import action.Action;
 /**
  * Stable storage abstraction for the 3PC protocol. Provides utilities for 
  * logging any Action to disk that implements the Serializable interface.
+ * 
+ * By default the whole log is rewritten to its file on every record. A
+ * TransactionLog over a WriteAheadLog instead appends each record once.
+ * A record logged without forcing is only written out with the next
+ * forced one, so it may be lost in a crash.
  *
  */
 public class TransactionLog {
@@ -26,6 +31,11 @@ public class TransactionLog {
 	 */
 	private ArrayList<Action> log;
 	
+	/**
+	 * Append-only log the records go to instead of file (null if none).
+	 */
+	private WriteAheadLog wal;
+	
 	/**
 	 * Default constructor.
 	 * @param reset		true to reset log on disk
@@ -56,6 +66,17 @@ public class TransactionLog {
 	}
 	
 	
+	/**
+	 * Creates a log whose records are appended to a WriteAheadLog.
+	 * @param wal	the log, whose recovered records this log starts with
+	 */
+	public TransactionLog(WriteAheadLog wal)
+	{
+		this.wal = wal;
+		this.log = new ArrayList<Action>(wal.recovered());
+	}
+	
+	
 	/**
 	 * Upon creating a new File on disk, it must be written to by the
 	 * process who created it before the process may be killed and recover
@@ -96,12 +117,39 @@ public class TransactionLog {
 	 * @return true if successful
 	 */
 	public boolean log(Action action)
+	{
+		return log(action, true);
+	}
+	
+	/**
+	 * Log a new action, making it durable only if asked to.
+	 * @param action	to be logged
+	 * @param force		false to leave it in memory (or unsynced) until the
+	 * 					next forced record
+	 * @return true if successful
+	 */
+	public boolean log(Action action, boolean force)
 	{
 		synchronized(this.log)
 		{
 			this.log.add(action);
 		}
-		return saveToDisk();
+		if (this.wal != null)
+		{
+			return this.wal.log(action, force);
+		}
+		return !force || saveToDisk();
+	}
+	
+	/**
+	 * Releases the log's file, if it holds one open.
+	 */
+	public void close()
+	{
+		if (this.wal != null)
+		{
+			this.wal.close();
+		}
 	}
 	
 	/**
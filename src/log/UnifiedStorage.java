@@ -0,0 +1,48 @@
+package log;
+
+/**
+ * A unified Storage engine: one WriteAheadLog holds the DT log, and the
+ * Playlist lives in memory, rebuilt from its COMMIT records on recovery.
+ * The engines differ only in the kind of WriteAheadLog.
+ */
+public class UnifiedStorage implements Storage
+{
+	/**
+	 * Opens a WriteAheadLog: (reset, path) -> log.
+	 */
+	public interface LogOpener
+	{
+		WriteAheadLog open(boolean reset, String path);
+	}
+	
+	private final String suffix;
+	private final LogOpener opener;
+	
+	/**
+	 * @param suffix	file name suffix of the log (after process<i>)
+	 * @param opener	opens the log
+	 */
+	public UnifiedStorage(String suffix, LogOpener opener)
+	{
+		this.suffix = suffix;
+		this.opener = opener;
+	}
+	
+	@Override
+	public TransactionLog openTransactionLog(String directory, int procNum, boolean reset)
+	{
+		return new TransactionLog(this.opener.open(reset, Storage.path(directory, procNum, this.suffix)));
+	}
+	
+	@Override
+	public PlaylistLog openPlaylistLog(String directory, int procNum, boolean reset)
+	{
+		return new PlaylistLog();
+	}
+	
+	@Override
+	public boolean isUnified()
+	{
+		return true;
+	}
+}
@@ -0,0 +1,86 @@
+package log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import action.Action;
+
+/**
+ * Append-only log of Actions: the stable storage of a TransactionLog in a
+ * unified Storage engine. Each record is written once, at the end, and is
+ * durable when log() returns, unless it is logged without forcing: it is
+ * then durable once a later forced record is.
+ * 
+ * Implementations: FileWriteAheadLog, MappedWriteAheadLog and
+ * MemoryWriteAheadLog.
+ */
+public abstract class WriteAheadLog
+{
+	/**
+	 * Records found in the log when it was opened.
+	 */
+	protected ArrayList<Action> recovered = new ArrayList<Action>();
+	
+	/**
+	 * Returns the records found in the log when it was opened.
+	 */
+	public ArrayList<Action> recovered()
+	{
+		return this.recovered;
+	}
+	
+	/**
+	 * Appends a record and makes it durable.
+	 * @return true if successful
+	 */
+	public boolean log(Action action)
+	{
+		return log(action, true);
+	}
+	
+	/**
+	 * Appends a record.
+	 * @param force	false to leave it to the next forced record to make
+	 * 				this one durable
+	 * @return true if successful
+	 */
+	public abstract boolean log(Action action, boolean force);
+	
+	/**
+	 * Releases the log's resources. Further calls to log() fail.
+	 */
+	public void close()
+	{
+	}
+	
+	/**
+	 * @return the serialized form of a record.
+	 */
+	protected static byte[] encode(Action action) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+		objectOut.writeObject(action);
+		objectOut.close();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * @return the record serialized in bytes, or null if they do not hold one.
+	 */
+	protected static Action decode(byte[] bytes)
+	{
+		try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+		{
+			return (Action)objectIn.readObject();
+		}
+		catch (ClassNotFoundException | IOException e)
+		{
+			return null;
+		}
+	}
+}
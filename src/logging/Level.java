@@ -0,0 +1,15 @@
+package logging;
+
+/**
+ * Severity of a log event, from most to least verbose.
+ */
+public enum Level {
+	TRACE, DEBUG, INFO, WARN, ERROR, OFF;
+	
+	/**
+	 * @return the level with the given name (case-insensitive).
+	 */
+	public static Level parse(String name) {
+		return valueOf(name.toUpperCase());
+	}
+}
@@ -0,0 +1,176 @@
+package logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Console log shared by all processes in the JVM.
+ * 
+ * Callers check enabled() before building a message, so a disabled event
+ * costs one volatile read. Enabled events go into a ring buffer and are
+ * formatted and printed by a background writer thread, so the protocol
+ * threads never block on the console. Events carry the process and
+ * transaction they belong to; a single transaction can be traced at
+ * TRACE level while everything else stays at the global level.
+ */
+public class Log {
+	
+	// Capacity of the ring buffer (events).
+	private static final int CAPACITY = 1 << 14;
+	
+	// How long the writer sleeps when there is nothing to print.
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	// How long flush() waits for the writer before giving up.
+	private static final long FLUSH_TIMEOUT_MILLIS = 2000;
+	
+	public static final int NO_TRANSACTION = -1;
+	
+	private static volatile Level level = Level.DEBUG;
+	private static volatile int tracedTransaction = NO_TRANSACTION;
+	
+	// When false, events are printed on the calling thread (used by the
+	// simulator, whose output must be deterministic).
+	private static volatile boolean async = true;
+	
+	private static final RingBuffer buffer = new RingBuffer(CAPACITY);
+	private static final AtomicLong dropped = new AtomicLong();
+	private static Thread writer = null;
+	
+	// Number of events the writer has printed (and flushed to stdout).
+	private static volatile long printed = 0;
+	
+	/**
+	 * Sets the global level. Events below it are discarded at the call site.
+	 */
+	public static void setLevel(Level level) {
+		Log.level = level;
+	}
+	
+	public static Level getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Logs every event of the given transaction, whatever the global level.
+	 * @param transactionId Transaction to trace, or NO_TRANSACTION for none.
+	 */
+	public static void trace(int transactionId) {
+		tracedTransaction = transactionId;
+	}
+	
+	/**
+	 * Switches between the background writer and printing on the caller's
+	 * thread. Pending events are flushed first.
+	 */
+	public static void setAsync(boolean async) {
+		flush();
+		Log.async = async;
+	}
+	
+	/**
+	 * @return whether an event of the given level would be logged.
+	 */
+	public static boolean enabled(Level eventLevel) {
+		return eventLevel.compareTo(level) >= 0;
+	}
+	
+	/**
+	 * @return whether an event of the given level about the given
+	 * 		   transaction would be logged.
+	 */
+	public static boolean enabled(Level eventLevel, int transactionId) {
+		return eventLevel.compareTo(level) >= 0
+				|| (transactionId == tracedTransaction && transactionId != NO_TRANSACTION);
+	}
+	
+	public static void log(Level eventLevel, int processId, String message) {
+		log(eventLevel, processId, NO_TRANSACTION, message, null);
+	}
+	
+	/**
+	 * Logs an event. The caller is expected to have checked enabled();
+	 * the detail object is converted to a string by the writer thread, so
+	 * it must not be modified afterwards.
+	 */
+	public static void log(Level eventLevel, int processId, int transactionId, String message, Object detail) {
+		if (!async) {
+			System.out.println(format(eventLevel, processId, transactionId, message, detail));
+			return;
+		}
+		ensureWriter();
+		if (!buffer.offer(eventLevel, processId, transactionId, message, detail)) {
+			dropped.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Blocks until every event logged so far has been printed.
+	 */
+	public static void flush() {
+		long target = buffer.published();
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+		while (printed < target && writer != null && System.currentTimeMillis() < deadline) {
+			LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+	
+	/**
+	 * @return number of events dropped because the buffer was full.
+	 */
+	public static long getDropped() {
+		return dropped.get();
+	}
+	
+	private static String format(Level eventLevel, int processId, int transactionId, String message, Object detail) {
+		StringBuilder sb = new StringBuilder();
+		if (eventLevel.compareTo(Level.WARN) >= 0) {
+			sb.append(eventLevel).append(' ');
+		}
+		if (transactionId != NO_TRANSACTION) {
+			sb.append(transactionId).append(": ");
+		}
+		sb.append("Process ").append(processId).append(' ').append(message);
+		if (detail != null) {
+			sb.append(' ').append(detail);
+		}
+		return sb.toString();
+	}
+	
+	private static synchronized void ensureWriter() {
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(Log::drain, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+	}
+	
+	private static void drain() {
+		StringBuilder batch = new StringBuilder();
+		long reportedDrops = 0;
+		while (true) {
+			RingBuffer.Event e;
+			while ((e = buffer.peek()) != null) {
+				batch.append(format(e.level, e.processId, e.transactionId, e.message, e.detail)).append('\n');
+				buffer.release();
+			}
+			long drops = dropped.get();
+			if (drops != reportedDrops) {
+				batch.append("[log] ").append(drops - reportedDrops).append(" event(s) dropped\n");
+				reportedDrops = drops;
+			}
+			if (batch.length() > 0) {
+				System.out.print(batch);
+				System.out.flush();
+				batch.setLength(0);
+				printed = buffer.consumed();
+			} else {
+				printed = buffer.consumed();
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer queue of log events. The slots
+ * are allocated once and reused, so publishing an event allocates nothing;
+ * a producer that finds the buffer full drops the event rather than wait.
+ */
+class RingBuffer {
+	
+	/**
+	 * One reusable slot. Formatting of the detail object is left to the
+	 * consumer, so the producer never calls toString().
+	 */
+	static class Event {
+		Level level;
+		int processId;
+		int transactionId;
+		String message;
+		Object detail;
+	}
+	
+	private final Event[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	
+	// Next position to claim (producers) and to consume (the one consumer).
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;
+	
+	RingBuffer(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of two");
+		}
+		slots = new Event[capacity];
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new Event();
+			sequences.set(i, i);
+		}
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * Publishes an event.
+	 * @return false if the buffer was full and the event was dropped.
+	 */
+	boolean offer(Level level, int processId, int transactionId, String message, Object detail) {
+		long pos = tail.get();
+		int index;
+		while (true) {
+			index = (int) (pos & mask);
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+		
+		Event e = slots[index];
+		e.level = level;
+		e.processId = processId;
+		e.transactionId = transactionId;
+		e.message = message;
+		e.detail = detail;
+		sequences.set(index, pos + 1);
+		return true;
+	}
+	
+	/**
+	 * @return the oldest published event, or null if there is none. The
+	 * 		   slot stays owned by the caller until release() is called.
+	 */
+	Event peek() {
+		int index = (int) (head & mask);
+		if (sequences.get(index) != head + 1) {
+			return null;
+		}
+		return slots[index];
+	}
+	
+	/**
+	 * Hands the slot returned by peek() back to the producers.
+	 */
+	void release() {
+		int index = (int) (head & mask);
+		Event e = slots[index];
+		e.message = null;
+		e.detail = null;
+		sequences.set(index, head + slots.length);
+		head = head + 1;
+	}
+	
+	/**
+	 * @return number of positions claimed by producers so far.
+	 */
+	long published() {
+		return tail.get();
+	}
+	
+	/**
+	 * @return number of events consumed so far.
+	 */
+	long consumed() {
+		return head;
+	}
+}
@@ -0,0 +1,120 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style histogram of non-negative long values (we record nanoseconds).
+ * Values below 128 are counted exactly; above that, every power-of-two
+ * range is split into 64 linear sub-buckets, so any recorded value is
+ * reported within 1.6% of its true value over the whole range of long.
+ * Recording is lock-free and allocation-free.
+ */
+public class Histogram {
+	
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF = SUB_BUCKETS / 2;
+	
+	// Exact buckets for [0, 128) plus 56 halves of 64 for larger values.
+	private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+	
+	private final String name;
+	private final AtomicLongArray counts;
+	private final AtomicLong total;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+	
+	public Histogram(String name) {
+		this.name = name;
+		counts = new AtomicLongArray(NUM_BUCKETS);
+		total = new AtomicLong();
+		sum = new AtomicLong();
+		max = new AtomicLong();
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int)value;
+		// Shift that brings value into [64, 128).
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF + (int)(value >>> shift) - HALF;
+	}
+	
+	// Largest value that maps to the given bucket.
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / HALF + 1;
+		long sub = (index - SUB_BUCKETS) % HALF + HALF;
+		return (sub << shift) + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Records one value. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(index(value));
+		total.incrementAndGet();
+		sum.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value))
+			;
+	}
+	
+	public long getCount() {
+		return total.get();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	public double getMean() {
+		long n = total.get();
+		return n == 0 ? 0 : (double)sum.get() / n;
+	}
+	
+	/**
+	 * @param percentile	in [0, 100]
+	 * @return the value at or below which the given percentage of recorded
+	 * 		   values fall, or 0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = total.get();
+		if (n == 0)
+			return 0;
+		long target = Math.max(1, (long)Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target)
+				return Math.min(highestValue(i), max.get());
+		}
+		return max.get();
+	}
+	
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			counts.set(i, 0);
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+	
+	/**
+	 * @return a one-line summary, with nanosecond values shown in milliseconds.
+	 */
+	@Override
+	public String toString() {
+		return String.format("%-22s count=%-8d mean=%.3fms p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+				name, getCount(), getMean() / 1e6, getValueAtPercentile(50) / 1e6,
+				getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6, getMax() / 1e6);
+	}
+}
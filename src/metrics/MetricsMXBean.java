@@ -0,0 +1,35 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of one process's MetricsRegistry, registered as
+ * threepc:type=Metrics,process=&lt;id&gt;.
+ */
+public interface MetricsMXBean {
+	
+	/**
+	 * @return every counter by name.
+	 */
+	Map<String, Long> getCounters();
+	
+	/**
+	 * @return the 50th percentile of every histogram, in milliseconds.
+	 */
+	Map<String, Double> getMedianMillis();
+	
+	/**
+	 * @return the 99th percentile of every histogram, in milliseconds.
+	 */
+	Map<String, Double> getP99Millis();
+	
+	/**
+	 * @return a printable report of all counters and histograms.
+	 */
+	String dump();
+	
+	/**
+	 * Clears all counters and histograms.
+	 */
+	void reset();
+}
@@ -0,0 +1,147 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for one process. There is exactly one
+ * registry per process ID in the JVM, so a revived process keeps adding
+ * to the numbers of the one it replaced.
+ */
+public class MetricsRegistry implements MetricsMXBean {
+	
+	// Histogram names.
+	public static final String VOTE = "phase.vote";					// VOTE-REQ sent -> last vote in
+	public static final String PRECOMMIT = "phase.precommit";		// PRECOMMIT sent -> ACK quorum
+	public static final String DT_LOG_WRITE = "dtlog.write";
+	public static final String PLAYLIST_APPLY = "playlist.apply";
+	public static final String COMMIT = "commit.endToEnd";			// BeginProtocol -> COMMIT at coordinator
+	public static final String READ_CONSISTENT = "read.consistent";	// readConsistent -> answer
+	
+	// Counter names and prefixes.
+	public static final String SENT = "sent.";						// + Action type
+	public static final String RECEIVED = "received.";				// + Action type
+	public static final String BYTES_OUT = "bytesOut.peer";			// + peer ID
+	public static final String SEND_FAILED = "sendFailed.peer";		// + peer ID
+	public static final String CONNECTS = "connects.peer";			// + peer ID
+	public static final String FLOW_BLOCKED = "flowBlocked.peer";	// + peer ID
+	public static final String TIMEOUTS = "timeouts";
+	public static final String ELECTIONS = "elections";
+	public static final String TERMINATION_RUNS = "terminationRuns";
+	public static final String LOCK_WAITS = "lockWaits";
+	public static final String LOCK_CONFLICTS = "lockConflicts";	// VOTE-REQs refused a lock (voted NO)
+	public static final String VALIDATION_FAILURES = "validationFailures";	// VOTE-REQs failing validation (voted NO)
+	public static final String DT_LOG_FORCED = "dtLogForced";		// DT log records forced to disk
+	public static final String DT_LOG_LAZY = "dtLogLazy";			// DT log records left to the next forced one
+	
+	private static final Map<Integer, MetricsRegistry> registries = new ConcurrentHashMap<Integer, MetricsRegistry>();
+	
+	private final int processId;
+	private final Map<String, LongAdder> counters;
+	private final Map<String, Histogram> histograms;
+	
+	private MetricsRegistry(int processId) {
+		this.processId = processId;
+		counters = new ConcurrentHashMap<String, LongAdder>();
+		histograms = new ConcurrentHashMap<String, Histogram>();
+	}
+	
+	/**
+	 * @return the registry of the given process, creating it (and
+	 * 		   registering it with JMX) on first use.
+	 */
+	public static MetricsRegistry forProcess(int processId) {
+		return registries.computeIfAbsent(processId, id -> {
+			MetricsRegistry r = new MetricsRegistry(id);
+			r.registerMBean();
+			return r;
+		});
+	}
+	
+	/**
+	 * @return the registries of all processes, by process ID.
+	 */
+	public static Map<Integer, MetricsRegistry> all() {
+		return new TreeMap<Integer, MetricsRegistry>(registries);
+	}
+	
+	private void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("threepc:type=Metrics,process=" + processId);
+			if (!server.isRegistered(name))
+				server.registerMBean(this, name);
+		} catch (Exception e) {
+			System.out.println("Could not register metrics for process " + processId + " with JMX: " + e);
+		}
+	}
+	
+	public void increment(String counter) {
+		add(counter, 1);
+	}
+	
+	public void add(String counter, long n) {
+		counters.computeIfAbsent(counter, c -> new LongAdder()).add(n);
+	}
+	
+	public long getCount(String counter) {
+		LongAdder c = counters.get(counter);
+		return c == null ? 0 : c.sum();
+	}
+	
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, Histogram::new);
+	}
+	
+	/**
+	 * Records the time elapsed since startNanos (a System.nanoTime value).
+	 */
+	public void recordSince(String histogram, long startNanos) {
+		histogram(histogram).record(System.nanoTime() - startNanos);
+	}
+	
+	public Map<String, Long> getCounters() {
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> e : counters.entrySet())
+			snapshot.put(e.getKey(), e.getValue().sum());
+		return snapshot;
+	}
+	
+	public Map<String, Double> getMedianMillis() {
+		Map<String, Double> snapshot = new TreeMap<String, Double>();
+		for (Histogram h : histograms.values())
+			snapshot.put(h.getName(), h.getValueAtPercentile(50) / 1e6);
+		return snapshot;
+	}
+	
+	public Map<String, Double> getP99Millis() {
+		Map<String, Double> snapshot = new TreeMap<String, Double>();
+		for (Histogram h : histograms.values())
+			snapshot.put(h.getName(), h.getValueAtPercentile(99) / 1e6);
+		return snapshot;
+	}
+	
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("process ").append(processId).append("'s metrics:\n");
+		sb.append("--------------------------------------------------------------------------------\n");
+		for (Histogram h : new TreeMap<String, Histogram>(histograms).values())
+			sb.append(h).append('\n');
+		for (Map.Entry<String, Long> e : getCounters().entrySet())
+			sb.append(String.format("%-22s %d%n", e.getKey(), e.getValue()));
+		sb.append("--------------------------------------------------------------------------------\n");
+		return sb.toString();
+	}
+	
+	public void reset() {
+		counters.clear();
+		for (Histogram h : histograms.values())
+			h.reset();
+	}
+}
@@ -0,0 +1,126 @@
+package playlist;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Song-name locks held by the transactions a participant has voted YES on
+ * but not yet seen decided, so that only transactions on disjoint songs are
+ * in flight together.
+ * 
+ * Acquisition never deadlocks: a transaction may wait only for locks held
+ * by older (lower ID) transactions; one that finds a lock held by a younger
+ * transaction is refused at once. Every wait is for an older transaction,
+ * so waits can never form a cycle.
+ */
+public class LockTable
+{
+	public enum Outcome
+	{
+		Acquired, Wait, Refused
+	}
+	
+	// Holder of each locked song name.
+	private HashMap<String, Integer> holders;
+	
+	// Song names locked by each transaction.
+	private HashMap<Integer, List<String>> held;
+	
+	public LockTable()
+	{
+		this.holders 	= new HashMap<String, Integer>();
+		this.held 		= new HashMap<Integer, List<String>>();
+	}
+	
+	/**
+	 * Locks all of the keys for the transaction, or none of them.
+	 * @return Acquired if it now holds them all; Wait if some are held by
+	 * 		   older transactions only; Refused if one is held by a younger one.
+	 */
+	public Outcome tryAcquire(int transactionId, Collection<String> keys)
+	{
+		Outcome outcome = Outcome.Acquired;
+		for (String key : keys)
+		{
+			Integer holder = this.holders.get(key);
+			if (holder == null || holder == transactionId)
+			{
+				continue;
+			}
+			if (holder > transactionId)
+			{
+				return Outcome.Refused;
+			}
+			outcome = Outcome.Wait;
+		}
+		if (outcome == Outcome.Acquired)
+		{
+			lock(transactionId, keys);
+		}
+		return outcome;
+	}
+	
+	/**
+	 * Locks the keys for the transaction regardless of other holders, taking
+	 * them over from whoever held them. Used to restore the locks of
+	 * undecided transactions on recovery.
+	 */
+	public void lock(int transactionId, Collection<String> keys)
+	{
+		List<String> mine = this.held.get(transactionId);
+		if (mine == null)
+		{
+			mine = new ArrayList<String>();
+			this.held.put(transactionId, mine);
+		}
+		for (String key : keys)
+		{
+			if (!holds(transactionId, key))
+			{
+				Integer previous = this.holders.put(key, transactionId);
+				if (previous != null)
+				{
+					this.held.get(previous).remove(key);
+				}
+				mine.add(key);
+			}
+		}
+	}
+	
+	/**
+	 * Releases every lock the transaction holds.
+	 * @return True if it held any.
+	 */
+	public boolean release(int transactionId)
+	{
+		List<String> mine = this.held.remove(transactionId);
+		if (mine == null)
+		{
+			return false;
+		}
+		for (String key : mine)
+		{
+			if (Objects.equals(this.holders.get(key), transactionId))
+			{
+				this.holders.remove(key);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return ID of the transaction holding the key, or null.
+	 */
+	public Integer holder(String key)
+	{
+		return this.holders.get(key);
+	}
+	
+	private boolean holds(int transactionId, String key)
+	{
+		return Objects.equals(this.holders.get(key), transactionId);
+	}
+}
@@ -1,8 +1,22 @@
 package playlist;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -10,6 +24,11 @@ import java.util.HashMap;
  * an instance of this class).  Upon a successful commit, each process
  * in the network will update their playlist.
  * 
+ * Every committed write is also kept as a version stamped with its
+ * transaction, so snapshot() and snapshotAt() give readers a consistent
+ * view without locking while commits keep being applied. Only one thread
+ * may apply commits (add, remove, edit) at a time.
+ * 
  * @author Mike Feilbach
  *
  */
@@ -26,6 +45,37 @@ public class Playlist implements Serializable {
 	// that were committed to this playlist.
 	private ArrayList<Integer> transactionsCompleted;
 	
+	// Secondary indexes over playlistMap, kept up to date by add, remove
+	// and edit. They are not written to disk; readObject rebuilds them.
+	// Songs sorted by name (for range, prefix and paginated listing).
+	private transient TreeMap<String, String> nameIndex;
+	
+	// The songs stored under each URL.
+	private transient HashMap<String, TreeSet<String>> urlIndex;
+	
+	// The transaction that last wrote each song.
+	private HashMap<String, Integer> writtenBy;
+	
+	// Number of applied transactions whose versions snapshots can still be
+	// taken at: versions older than the last RETAINED_HISTORY are dropped.
+	public static final int RETAINED_HISTORY = 1024;
+	
+	// Newest version of each song (deleted songs stay, as a version with no
+	// URL, until no snapshot can still see them). Not written to disk: 
+	// history starts over when the Playlist is read back.
+	private transient ConcurrentHashMap<String, SongVersion> versions;
+	
+	// IDs of the applied transactions in apply order, the number applied,
+	// where each was applied, and the fewest applied transactions a
+	// snapshot may still be taken at.
+	private transient volatile int[] appliedIds;
+	private transient volatile int applied;
+	private transient ConcurrentHashMap<Integer, Integer> appliedAt;
+	private transient volatile int horizon;
+	
+	// Deleted songs' versions, oldest first, to drop once past the horizon.
+	private transient ArrayDeque<Map.Entry<String, SongVersion>> tombstones;
+	
 	/**
 	 * Default constructor.
 	 */
@@ -33,6 +83,185 @@ public class Playlist implements Serializable {
 		
 		this.playlistMap = new HashMap<String, String>();
 		this.transactionsCompleted = new ArrayList<Integer>();
+		this.nameIndex = new TreeMap<String, String>();
+		this.urlIndex = new HashMap<String, TreeSet<String>>();
+		this.writtenBy = new HashMap<String, Integer>();
+		initVersions();
+	}
+	
+	
+	/**
+	 * Builds a Playlist from a snapshot of another one.
+	 * 
+	 * @param names, the song names.
+	 * @param URLs, the URL of each song (same order as names).
+	 * @param transactionsCompleted, the transactions the snapshot covers.
+	 */
+	public static Playlist fromSnapshot(List<String> names, List<String> URLs, List<Integer> transactionsCompleted) {
+		
+		Playlist p = new Playlist();
+		for (int i = 0; i < names.size(); i++) {
+			p.playlistMap.put(names.get(i), URLs.get(i));
+			p.index(names.get(i), URLs.get(i));
+		}
+		p.transactionsCompleted.addAll(transactionsCompleted);
+		p.initVersions();
+		return p;
+	}
+	
+	
+	/**
+	 * Rebuilds the indexes after the Playlist is read from disk.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		
+		in.defaultReadObject();
+		this.nameIndex = new TreeMap<String, String>();
+		this.urlIndex = new HashMap<String, TreeSet<String>>();
+		for (Map.Entry<String, String> song : this.playlistMap.entrySet()) {
+			index(song.getKey(), song.getValue());
+		}
+		if (this.writtenBy == null) {
+			this.writtenBy = new HashMap<String, Integer>();
+		}
+		initVersions();
+	}
+	
+	
+	/**
+	 * Starts the version history at the current contents: one version per
+	 * song, none older.
+	 */
+	private void initVersions() {
+		
+		int n = this.transactionsCompleted.size();
+		this.versions = new ConcurrentHashMap<String, SongVersion>();
+		this.appliedIds = new int[Math.max(16, 2 * n)];
+		this.appliedAt = new ConcurrentHashMap<Integer, Integer>();
+		this.tombstones = new ArrayDeque<Map.Entry<String, SongVersion>>();
+		for (int i = 0; i < n; i++) {
+			this.appliedIds[i] = this.transactionsCompleted.get(i);
+			this.appliedAt.put(this.transactionsCompleted.get(i), i + 1);
+		}
+		for (Map.Entry<String, String> song : this.playlistMap.entrySet()) {
+			Integer by = this.writtenBy.get(song.getKey());
+			this.versions.put(song.getKey(), new SongVersion(song.getValue(), by == null ? -1 : by, n, null));
+		}
+		this.applied = n;
+		this.horizon = n;
+	}
+	
+	
+	/**
+	 * Records a song's new value (null if deleted) as a version of the
+	 * transaction being applied, not yet visible to snapshots.
+	 */
+	private void stamp(String songName, String URL, int transID) {
+		
+		SongVersion v = new SongVersion(URL, transID, this.applied + 1, this.versions.get(songName));
+		this.versions.put(songName, v);
+		if (URL == null) {
+			this.writtenBy.remove(songName);
+			this.tombstones.add(new AbstractMap.SimpleImmutableEntry<String, SongVersion>(songName, v));
+		}
+		else {
+			this.writtenBy.put(songName, transID);
+		}
+		
+		// Drop versions no snapshot can see any more.
+		for (; v != null; v = v.previous) {
+			if (v.sequence <= this.horizon) {
+				v.previous = null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Makes the versions stamped by a transaction visible to new snapshots.
+	 */
+	private void publish(int transID) {
+		
+		int[] ids = this.appliedIds;
+		if (this.applied == ids.length) {
+			ids = Arrays.copyOf(ids, 2 * ids.length);
+			this.appliedIds = ids;
+		}
+		ids[this.applied] = transID;
+		this.appliedAt.put(transID, this.applied + 1);
+		this.applied = this.applied + 1;
+		this.horizon = Math.max(this.horizon, this.applied - RETAINED_HISTORY);
+		
+		while (!this.tombstones.isEmpty() && this.tombstones.peek().getValue().sequence <= this.horizon) {
+			Map.Entry<String, SongVersion> t = this.tombstones.poll();
+			this.versions.remove(t.getKey(), t.getValue());
+		}
+	}
+	
+	
+	SongVersion head(String songName) {
+		
+		return this.versions.get(songName);
+	}
+	
+	
+	Set<Map.Entry<String, SongVersion>> heads() {
+		
+		return this.versions.entrySet();
+	}
+	
+	
+	int horizon() {
+		
+		return this.horizon;
+	}
+	
+	
+	/**
+	 * Returns a view of this playlist as of the last transaction applied.
+	 * Safe to call from any thread, without locking.
+	 */
+	public PlaylistSnapshot snapshot() {
+		
+		int sequence = this.applied;
+		return new PlaylistSnapshot(this, sequence, this.appliedIds);
+	}
+	
+	
+	/**
+	 * Returns a view of this playlist as of (just after) the given
+	 * transaction was applied. Safe to call from any thread, without
+	 * locking.
+	 * @return the view, or null if the transaction has not been applied or
+	 * was applied before the retained history.
+	 */
+	public PlaylistSnapshot snapshotAt(int transID) {
+		
+		Integer sequence = this.appliedAt.get(transID);
+		if (sequence == null || sequence < this.horizon) {
+			return null;
+		}
+		return new PlaylistSnapshot(this, sequence, this.appliedIds);
+	}
+	
+	
+	private void index(String songName, String URL) {
+		
+		this.nameIndex.put(songName, URL);
+		this.urlIndex.computeIfAbsent(URL, k -> new TreeSet<String>()).add(songName);
+	}
+	
+	
+	private void unindex(String songName, String URL) {
+		
+		this.nameIndex.remove(songName);
+		TreeSet<String> names = this.urlIndex.get(URL);
+		if (names != null) {
+			names.remove(songName);
+			if (names.isEmpty()) {
+				this.urlIndex.remove(URL);
+			}
+		}
 	}
 	
 	
@@ -54,15 +283,18 @@ public class Playlist implements Serializable {
 		}
 		
 		this.playlistMap.put(songName, URL);
+		index(songName, URL);
+		stamp(songName, URL, transID);
 		
 		// Add the transaction ID to the list of completed transactions.
-		if (this.transactionsCompleted.contains(transID))
+		if (this.appliedAt.containsKey(transID))
 		{
 			System.out.println("This transaction ID is already in the Playlist! Terminating.");
 			System.exit(-1);
 		}
 		
 		this.transactionsCompleted.add(transID);
+		publish(transID);
 	}
 	
 	
@@ -84,16 +316,18 @@ public class Playlist implements Serializable {
 		}
 		
 		// The song name (and it's value) is okay to remove.
-		this.playlistMap.remove(songName);
+		unindex(songName, this.playlistMap.remove(songName));
+		stamp(songName, null, transID);
 		
 		// Add the transaction ID to the list of completed transactions.
-		if (this.transactionsCompleted.contains(transID))
+		if (this.appliedAt.containsKey(transID))
 		{
 			System.out.println("This transaction ID is already in the Playlist! Terminating.");
 			System.exit(-1);
 		}
 		
 		this.transactionsCompleted.add(transID);
+		publish(transID);
 	}
 	
 	
@@ -119,8 +353,16 @@ public class Playlist implements Serializable {
 					songName + " was not in the playlist.");
 		}
 		
+		// Nor may it take the name of another song (checked before
+		// anything changes, so a failed edit leaves no trace).
+		if (!newSongName.equals(songName) && this.playlistMap.containsKey(newSongName)) {
+			throw new Exception("The new song name: " + 
+					newSongName + " is already in the playlist.");
+		}
+		
 		// Remove the old key, value pair.
-		this.playlistMap.remove(songName);
+		unindex(songName, this.playlistMap.remove(songName));
+		stamp(songName, null, transID);
 		
 		// Add a new key, value pair.
 		// NOTE: this method call with insert the given transID into
@@ -131,11 +373,83 @@ public class Playlist implements Serializable {
 	
 	/**
 	 * Return this playlist.
-	 * @return this playlist.
+	 * @return this playlist (read-only: changes must go through add, remove
+	 * and edit so the indexes stay in step).
+	 */
+	public Map<String, String> getPlaylist() {
+		
+		return Collections.unmodifiableMap(this.playlistMap);
+	}
+	
+	
+	/**
+	 * Returns the URL of a song.
+	 * @return the URL, or null if the song is not in the playlist.
 	 */
-	public HashMap<String, String> getPlaylist() {
+	public String getUrl(String songName) {
 		
-		return this.playlistMap;
+		return this.playlistMap.get(songName);
+	}
+	
+	
+	/**
+	 * Returns the songs stored under a URL, sorted by name.
+	 * @return the song names (empty if there are none).
+	 */
+	public SortedSet<String> getSongsByUrl(String URL) {
+		
+		TreeSet<String> names = this.urlIndex.get(URL);
+		if (names == null) {
+			return Collections.emptySortedSet();
+		}
+		return Collections.unmodifiableSortedSet(names);
+	}
+	
+	
+	/**
+	 * Returns a read-only, sorted view of the songs with names in
+	 * [fromName, toName). Either bound may be null for no bound.
+	 */
+	public SortedMap<String, String> getRange(String fromName, String toName) {
+		
+		if (fromName == null && toName == null) {
+			return Collections.unmodifiableSortedMap(this.nameIndex);
+		}
+		if (fromName == null) {
+			return Collections.unmodifiableSortedMap(this.nameIndex.headMap(toName));
+		}
+		if (toName == null) {
+			return Collections.unmodifiableSortedMap(this.nameIndex.tailMap(fromName));
+		}
+		return Collections.unmodifiableSortedMap(this.nameIndex.subMap(fromName, toName));
+	}
+	
+	
+	/**
+	 * Returns one page of the songs whose names start with a prefix, in
+	 * name order. Finding the page costs O(log n) however large the
+	 * playlist is.
+	 * 
+	 * @param prefix, the name prefix ("" for all songs).
+	 * @param after, the last name of the previous page (null for the first
+	 * page).
+	 * @param limit, the maximum number of songs to return.
+	 * @return the <name, URL> pairs, in name order.
+	 */
+	public List<Map.Entry<String, String>> getPage(String prefix, String after, int limit) {
+		
+		Map<String, String> candidates = (after == null || after.compareTo(prefix) < 0)
+				? this.nameIndex.tailMap(prefix, true)
+				: this.nameIndex.tailMap(after, false);
+		
+		List<Map.Entry<String, String>> page = new ArrayList<Map.Entry<String, String>>();
+		for (Map.Entry<String, String> song : candidates.entrySet()) {
+			if (page.size() >= limit || !song.getKey().startsWith(prefix)) {
+				break;
+			}
+			page.add(new AbstractMap.SimpleImmutableEntry<String, String>(song));
+		}
+		return page;
 	}
 	
 	
@@ -147,29 +461,50 @@ public class Playlist implements Serializable {
 		return this.transactionsCompleted;
 	}
 	
+	
+	/**
+	 * Returns the ID of the last transaction committed to this Playlist.
+	 * @return the last transaction ID, or -1 if there is none.
+	 */
+	public int getLastTransaction() {
+		if (this.transactionsCompleted.isEmpty()) {
+			return -1;
+		}
+		return this.transactionsCompleted.get(this.transactionsCompleted.size() - 1);
+	}
+	
 	/**
 	 * Prints this playlist to stdout.
 	 */
 	public void printPlaylist() {
 		
+		print(this.transactionsCompleted, this.nameIndex);
+	}
+	
+	
+	/**
+	 * Prints the given transactions and songs (sorted by name) to stdout.
+	 */
+	static void print(List<Integer> transactionsCompleted, SortedMap<String, String> songs) {
+		
 		System.out.println("--------------------------------------------------------------------------------");
-		System.out.print("Playlist has completed " + this.transactionsCompleted.size() + " transaction(s): ");
+		System.out.print("Playlist has completed " + transactionsCompleted.size() + " transaction(s): ");
 		
 		// Print all but the last transaction ID.
-		for (int i = 0; i < (this.transactionsCompleted.size() - 1); i++) {
-			System.out.print(this.transactionsCompleted.get(i) + ", ");
+		for (int i = 0; i < (transactionsCompleted.size() - 1); i++) {
+			System.out.print(transactionsCompleted.get(i) + ", ");
 		}
 		
 		// Print last transaction ID.
-		if (this.transactionsCompleted.size() > 0)
+		if (transactionsCompleted.size() > 0)
 		{
-			System.out.println(this.transactionsCompleted.get(this.transactionsCompleted.size() - 1));
+			System.out.println(transactionsCompleted.get(transactionsCompleted.size() - 1));
 		}
 		
 		int count = 1;
 		
-		for (String key : this.playlistMap.keySet()) {
-		    System.out.println(count + ") " + key + ", " + this.playlistMap.get(key));
+		for (Map.Entry<String, String> song : songs.entrySet()) {
+		    System.out.println(count + ") " + song.getKey() + ", " + song.getValue());
 		    count++;
 		}
 		
@@ -2,6 +2,9 @@ package playlist;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -18,16 +21,75 @@ public class PlaylistAction implements Serializable
 	
 	ArrayList<String> command;
 	
+	// For an optimistic transaction: the version (writing transaction ID, -1
+	// for absent) of each song the client read, which must still be current
+	// when a participant votes. Null if the action read nothing.
+	HashMap<String, Integer> expectedVersions;
+	
 	public PlaylistAction(ArrayList<String> command)
 	{
 		this.command = command;
 	}
 	
+	/**
+	 * Makes this action conditional on a song still having the version the
+	 * client read (see PlaylistSnapshot.getVersion and ReadResult.getVersion):
+	 * participants vote NO if another transaction has written it since.
+	 * @return this action.
+	 */
+	public PlaylistAction expectVersion(String songName, int transactionId)
+	{
+		if (this.expectedVersions == null)
+		{
+			this.expectedVersions = new HashMap<String, Integer>();
+		}
+		this.expectedVersions.put(songName, transactionId);
+		return this;
+	}
+	
+	/**
+	 * @return The versions set by expectVersion (empty if none).
+	 */
+	public Map<String, Integer> getExpectedVersions()
+	{
+		if (this.expectedVersions == null)
+		{
+			return new HashMap<String, Integer>();
+		}
+		return this.expectedVersions;
+	}
+	
 	public ArrayList<String> getCommand()
 	{
 		return this.command;
 	}
 	
+	/**
+	 * @return The song names this action reads or writes: the song added or
+	 * 		   deleted, or both the old and the new name of an edited song,
+	 * 		   and any song it expects a version of.
+	 */
+	public List<String> getKeys()
+	{
+		List<String> keys = new ArrayList<String>();
+		keys.add(this.command.get(1));
+		if (this.command.get(0).equals("Edit") && !this.command.get(2).equals(this.command.get(1)))
+		{
+			keys.add(this.command.get(2));
+		}
+		if (this.expectedVersions != null)
+		{
+			for (String songName : this.expectedVersions.keySet())
+			{
+				if (!keys.contains(songName))
+				{
+					keys.add(songName);
+				}
+			}
+		}
+		return keys;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,162 @@
+package playlist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A consistent, read-only view of a Playlist as of one applied transaction.
+ * Reading it takes no lock and never waits on transactions being applied.
+ * 
+ * A snapshot reads the Playlist's live version chains, so it only stays
+ * readable while the Playlist keeps enough history (see
+ * Playlist.RETAINED_HISTORY); after that its reads throw
+ * IllegalStateException rather than answer from a later state.
+ */
+public class PlaylistSnapshot {
+	
+	private final Playlist playlist;
+	
+	// Number of transactions applied in this view.
+	private final int sequence;
+	
+	private final int[] appliedIds;
+	
+	PlaylistSnapshot(Playlist playlist, int sequence, int[] appliedIds) {
+		this.playlist = playlist;
+		this.sequence = sequence;
+		this.appliedIds = appliedIds;
+	}
+	
+	
+	/**
+	 * Returns the URL of a song.
+	 * @return the URL, or null if the song is not in the playlist.
+	 */
+	public String getUrl(String songName) {
+		
+		SongVersion v = visible(this.playlist.head(songName));
+		return checked(v == null ? null : v.url);
+	}
+	
+	
+	/**
+	 * Returns the transaction that wrote a song's current value, for
+	 * PlaylistAction.expectVersion.
+	 * @return the transaction ID, or -1 if the song is not in the playlist
+	 * or was written before the Playlist was last read from disk.
+	 */
+	public int getVersion(String songName) {
+		
+		SongVersion v = visible(this.playlist.head(songName));
+		return checked(v == null || v.url == null ? -1 : v.transactionId);
+	}
+	
+	
+	/**
+	 * Validates an action against this view, as a participant does before
+	 * voting YES: the songs it expects versions of must still have them,
+	 * and the action must apply cleanly (no Add or rename onto an existing
+	 * song, no Edit or Delete of a missing one).
+	 * @return why the action cannot commit, or null if it can.
+	 */
+	public String conflicts(PlaylistAction action) {
+		
+		for (Map.Entry<String, Integer> expected : action.getExpectedVersions().entrySet()) {
+			int version = getVersion(expected.getKey());
+			if (version != expected.getValue()) {
+				return expected.getKey() + " is at version " + version + ", not " + expected.getValue();
+			}
+		}
+		
+		List<String> command = action.getCommand();
+		String songName = command.get(1);
+		if (command.get(0).equals("Add")) {
+			if (getUrl(songName) != null) {
+				return songName + " is already in the playlist";
+			}
+		}
+		else if (getUrl(songName) == null) {
+			return songName + " is not in the playlist";
+		}
+		else if (command.get(0).equals("Edit") && !command.get(2).equals(songName) && getUrl(command.get(2)) != null) {
+			return command.get(2) + " is already in the playlist";
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns a copy of all songs, sorted by name.
+	 */
+	public SortedMap<String, String> getSongs() {
+		
+		TreeMap<String, String> songs = new TreeMap<String, String>();
+		for (Map.Entry<String, SongVersion> head : this.playlist.heads()) {
+			SongVersion v = visible(head.getValue());
+			if (v != null && v.url != null) {
+				songs.put(head.getKey(), v.url);
+			}
+		}
+		return checked(songs);
+	}
+	
+	
+	/**
+	 * Returns the IDs of the transactions applied in this view, in the order
+	 * they were applied.
+	 */
+	public List<Integer> getTransactionsCompleted() {
+		
+		List<Integer> ids = new ArrayList<Integer>(this.sequence);
+		for (int i = 0; i < this.sequence; i++) {
+			ids.add(this.appliedIds[i]);
+		}
+		return ids;
+	}
+	
+	
+	/**
+	 * Returns the ID of the last transaction applied in this view.
+	 * @return the last transaction ID, or -1 if there is none.
+	 */
+	public int getLastTransaction() {
+		
+		return this.sequence == 0 ? -1 : this.appliedIds[this.sequence - 1];
+	}
+	
+	
+	/**
+	 * Prints this view to stdout, in the same format as
+	 * Playlist.printPlaylist.
+	 */
+	public void printPlaylist() {
+		
+		Playlist.print(getTransactionsCompleted(), getSongs());
+	}
+	
+	
+	private SongVersion visible(SongVersion v) {
+		
+		while (v != null && v.sequence > this.sequence) {
+			v = v.previous;
+		}
+		return v;
+	}
+	
+	
+	/**
+	 * Fails a read that may have followed a chain the Playlist cut while it
+	 * was reading.
+	 */
+	private <T> T checked(T value) {
+		
+		if (this.sequence < this.playlist.horizon()) {
+			throw new IllegalStateException("Snapshot at transaction " + getLastTransaction() 
+					+ " is older than the Playlist's retained history.");
+		}
+		return value;
+	}
+}
@@ -0,0 +1,62 @@
+package playlist;
+
+/**
+ * The answer to a read of one song, tagged with how fresh it is.
+ */
+public class ReadResult {
+	
+	private final String songName;
+	
+	// Null if the song is not in the playlist.
+	private final String url;
+	
+	// Last transaction applied to the playlist the answer came from
+	// (-1 if none).
+	private final int appliedThrough;
+	
+	// Transaction that wrote the value read (-1 if the song is not in the
+	// playlist or its writer is unknown); see PlaylistAction.expectVersion.
+	private final int version;
+	
+	// True if the replica had applied every transaction any live process
+	// knew to be committed; false for a local (possibly stale) read.
+	private final boolean consistent;
+	
+	public ReadResult(String songName, String url, int appliedThrough, boolean consistent) {
+		this(songName, url, appliedThrough, -1, consistent);
+	}
+	
+	public ReadResult(String songName, String url, int appliedThrough, int version, boolean consistent) {
+		this.songName = songName;
+		this.url = url;
+		this.appliedThrough = appliedThrough;
+		this.version = version;
+		this.consistent = consistent;
+	}
+	
+	public String getSongName() {
+		return this.songName;
+	}
+	
+	public String getUrl() {
+		return this.url;
+	}
+	
+	public int getAppliedThrough() {
+		return this.appliedThrough;
+	}
+	
+	public int getVersion() {
+		return this.version;
+	}
+	
+	public boolean isConsistent() {
+		return this.consistent;
+	}
+	
+	@Override
+	public String toString() {
+		return songName + " -> " + (url == null ? "(not in playlist)" : url)
+				+ " [" + (consistent ? "consistent" : "stale") + ", applied through transaction " + appliedThrough + "]";
+	}
+}
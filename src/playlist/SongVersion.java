@@ -0,0 +1,32 @@
+package playlist;
+
+/**
+ * One committed value of a song: what a transaction wrote to it, linked to
+ * the value it replaced. A Playlist keeps the newest version of each song
+ * at the head of such a chain, so readers can walk back to the value as of
+ * any applied transaction still in its history.
+ */
+class SongVersion {
+	
+	// The song's URL, or null if the transaction deleted it (or renamed it away).
+	final String url;
+	
+	// The transaction that wrote this version (-1 if unknown, e.g. it predates
+	// the Playlist being read from disk).
+	final int transactionId;
+	
+	// Position of that transaction in the Playlist's apply order (1 for the
+	// first transaction applied).
+	final int sequence;
+	
+	// The version this one replaced. Cut (set to null) once no snapshot the
+	// Playlist still serves can need it.
+	volatile SongVersion previous;
+	
+	SongVersion(String url, int transactionId, int sequence, SongVersion previous) {
+		this.url = url;
+		this.transactionId = transactionId;
+		this.sequence = sequence;
+		this.previous = previous;
+	}
+}
@@ -0,0 +1,125 @@
+package tracing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reconstructs the critical path of a transaction from the trace files of
+ * all processes: starting from the span that finished last, follows parent
+ * links back to the span that started the transaction. Time between a span
+ * and its parent ("wait") is time the work sat in a queue.
+ */
+public class CriticalPath {
+	
+	private static final Pattern SPAN = Pattern.compile(
+			"\"name\":\"([^\"]*)\",\"cat\":\"(\\w+)\",.*\"pid\":(\\d+),.*\"ts\":(\\d+),\"dur\":(\\d+),"
+			+ "\"args\":\\{\"txn\":(-?\\d+),\"trace\":\"(\\w+)\",\"span\":\"(\\w+)\",\"parent\":\"(\\w+)\"");
+	
+	private static class Span {
+		String name;
+		String kind;
+		int process;
+		long start;
+		long duration;
+		String span;
+		String parent;
+		
+		long end() {
+			return start + duration;
+		}
+	}
+	
+	/**
+	 * Prints the critical path of the given transaction.
+	 * @param directory	Directory holding the process*.trace.json files.
+	 */
+	public static void print(int transactionId, File directory) throws IOException {
+		List<Span> spans = load(transactionId, directory);
+		if (spans.isEmpty()) {
+			System.out.println("No spans recorded for transaction " + transactionId + ".");
+			return;
+		}
+		
+		Map<String, Span> byId = new HashMap<String, Span>();
+		Map<String, List<Span>> children = new HashMap<String, List<Span>>();
+		Span last = null;
+		for (Span s : spans) {
+			byId.put(s.span, s);
+			children.computeIfAbsent(s.parent, k -> new ArrayList<Span>()).add(s);
+			if (last == null || s.end() > last.end()) {
+				last = s;
+			}
+		}
+		
+		List<Span> path = new ArrayList<Span>();
+		for (Span s = last; s != null; s = byId.get(s.parent)) {
+			path.add(s);
+		}
+		Collections.reverse(path);
+		
+		long origin = path.get(0).start;
+		Map<String, Long> perKind = new TreeMap<String, Long>();
+		System.out.println("Critical path of transaction " + transactionId + ": "
+				+ (last.end() - origin) + " us over " + path.size() + " spans");
+		Span previous = null;
+		for (Span s : path) {
+			long wait = previous == null ? 0 : s.start - previous.end();
+			if (wait > 0) {
+				perKind.merge("wait", wait, Long::sum);
+			}
+			perKind.merge(s.kind, s.duration, Long::sum);
+			System.out.println(String.format("  %+9d us  p%-3d %-36s %8d us%s",
+					s.start - origin, s.process, s.name, s.duration,
+					wait > 0 ? "  (waited " + wait + " us)" : ""));
+			
+			// DT log writes done while handling this action.
+			for (Span c : children.getOrDefault(s.span, Collections.<Span>emptyList())) {
+				if (c.kind.equals("dtlog")) {
+					System.out.println(String.format("  %+9d us  p%-3d   %-34s %8d us",
+							c.start - origin, c.process, c.name, c.duration));
+				}
+			}
+			previous = s;
+		}
+		System.out.println("  Time by step: " + perKind);
+	}
+	
+	private static List<Span> load(int transactionId, File directory) throws IOException {
+		List<Span> spans = new ArrayList<Span>();
+		File[] files = directory.listFiles((dir, name) -> name.startsWith("process") && name.endsWith(".trace.json"));
+		if (files == null) {
+			return spans;
+		}
+		for (File f : files) {
+			try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					Matcher m = SPAN.matcher(line);
+					if (!m.find() || Integer.parseInt(m.group(6)) != transactionId) {
+						continue;
+					}
+					Span s = new Span();
+					s.name = m.group(1);
+					s.kind = m.group(2);
+					s.process = Integer.parseInt(m.group(3));
+					s.start = Long.parseLong(m.group(4));
+					s.duration = Long.parseLong(m.group(5));
+					s.span = m.group(8);
+					s.parent = m.group(9);
+					spans.add(s);
+				}
+			}
+		}
+		return spans;
+	}
+}
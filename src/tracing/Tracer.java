@@ -0,0 +1,140 @@
+package tracing;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the spans of one process and appends them to
+ * process<id>.trace.json in the Chrome trace event format, which can be
+ * opened in chrome://tracing or Perfetto, or read back by CriticalPath.
+ * 
+ * Each span belongs to a transaction and a trace, and points at the span
+ * that caused it, so the spans of all processes together form a tree per
+ * transaction: handle -> send -> receive (at the destination) -> handle.
+ * Tracing is off by default and costs one volatile read when off.
+ */
+public class Tracer {
+	
+	private static final Map<Integer, Tracer> tracers = new ConcurrentHashMap<Integer, Tracer>();
+	
+	private static volatile boolean enabled = false;
+	
+	// Wall-clock microseconds at which this JVM started, plus the
+	// monotonic time since then, so that spans from different processes
+	// (and JVMs) line up.
+	private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+	private static final long EPOCH_NANOS = System.nanoTime();
+	
+	private final int processId;
+	private final AtomicLong nextSpan;
+	private final String filename;
+	private BufferedWriter out;
+	
+	private Tracer(int processId) {
+		this.processId = processId;
+		// Span IDs are unique across processes: the high bits are the process.
+		nextSpan = new AtomicLong(((long) (processId + 1)) << 40);
+		filename = "process" + processId + ".trace.json";
+	}
+	
+	/**
+	 * @return the tracer of the given process. A revived process keeps
+	 * 		   appending to the file of the one it replaced.
+	 */
+	public static Tracer forProcess(int processId) {
+		return tracers.computeIfAbsent(processId, Tracer::new);
+	}
+	
+	public static void setEnabled(boolean on) {
+		enabled = on;
+		if (!on) {
+			flushAll();
+		}
+	}
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Writes out the buffered spans of every process.
+	 */
+	public static void flushAll() {
+		for (Tracer t : tracers.values()) {
+			t.flush();
+		}
+	}
+	
+	/**
+	 * @return a new, random trace ID.
+	 */
+	public static long newTraceId() {
+		long id;
+		do {
+			id = ThreadLocalRandom.current().nextLong();
+		} while (id == 0);
+		return id;
+	}
+	
+	/**
+	 * @return the current time in microseconds.
+	 */
+	public static long now() {
+		return EPOCH_MICROS + (System.nanoTime() - EPOCH_NANOS) / 1000;
+	}
+	
+	public long newSpanId() {
+		return nextSpan.incrementAndGet();
+	}
+	
+	/**
+	 * Records a finished span.
+	 * @param spanId		ID from newSpanId().
+	 * @param name			"<kind> <detail>", e.g. "handle Yes".
+	 * @param parentId		Span that caused this one (0 if none).
+	 * @param start			Start time, from now().
+	 * @param end			End time, from now().
+	 */
+	public synchronized void record(long spanId, String name, int transactionId, long traceId, long parentId, long start, long end) {
+		int space = name.indexOf(' ');
+		String kind = space < 0 ? name : name.substring(0, space);
+		StringBuilder sb = new StringBuilder(192);
+		sb.append("{\"name\":\"").append(name)
+		  .append("\",\"cat\":\"").append(kind)
+		  .append("\",\"ph\":\"X\",\"pid\":").append(processId)
+		  .append(",\"tid\":").append(processId)
+		  .append(",\"ts\":").append(start)
+		  .append(",\"dur\":").append(Math.max(0, end - start))
+		  .append(",\"args\":{\"txn\":").append(transactionId)
+		  .append(",\"trace\":\"").append(Long.toHexString(traceId))
+		  .append("\",\"span\":\"").append(Long.toHexString(spanId))
+		  .append("\",\"parent\":\"").append(Long.toHexString(parentId))
+		  .append("\"}},\n");
+		try {
+			if (out == null) {
+				// The closing ] is optional in this format, so spans can
+				// simply be appended.
+				out = new BufferedWriter(new FileWriter(filename));
+				out.write("[\n");
+			}
+			out.write(sb.toString());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public synchronized void flush() {
+		if (out != null) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}